@@ -1,13 +1,37 @@
 package com.luca.anzalone;
 
+import com.luca.anzalone.network.Topology;
+import com.luca.anzalone.profiling.EnvelopeFlightEvent;
+import com.luca.anzalone.profiling.MessageSendEvent;
+import com.luca.anzalone.profiling.Timeline;
+import com.luca.anzalone.runtime.Mailbox;
+import com.luca.anzalone.runtime.EventLoopGroup;
+import com.luca.anzalone.safety.SafetyChecker;
 import com.luca.anzalone.stats.Summary;
 import com.luca.anzalone.utils.Debug;
 import com.luca.anzalone.utils.Message;
+import com.luca.anzalone.utils.Payload;
 import com.sun.istack.internal.NotNull;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
@@ -15,63 +39,656 @@ import static com.luca.anzalone.utils.Globals.*;
 
 /**
  * Channel is responsible for the creation, communication, and execution of the nodes.
- * The messages (sent across the channel) can be lost and/or duplicated.
+ * The messages (sent across the channel) can be lost and/or duplicated, according to the network [topology].
+ *
+ * The nodes run on a thread each, or, when [Globals.EVENT_LOOPS] is set, on a group of event loops: in the latter
+ * case a delivery is an event scheduled (after the network delay) on the loop of the receiver.
+ *
+ * With [Globals.SNAPSHOTS] the channel tracks the in-flight messages: the whole cluster can then be captured
+ * ([snapshot]) while running, and many continuations forked from it ([fork]).
+ *
+ * With [Globals.PAYLOAD_SIZE] each proposed value has an off-heap [Payload], carried by the messages with a value
+ * (begin, last and success), and checked on delivery. With [Globals.DIGEST_CONSENSUS] every node spreads its payload
+ * out-of-band at launch (a bulk transfer), and the messages carry the digest only. With [Globals.BANDWIDTH] the size
+ * of an envelope adds its transfer time to the network delay, and the nodes start once the payloads are spread.
+ *
+ * With [Globals.LEARNERS] the channel also hosts some learners, after the voters (ranks from [size]): they never
+ * take part in the quorums, nor in the elections, they only receive the [success] (or ask a voter for it), so they
+ * can serve reads without making the quorums larger. A custom [Globals.TOPOLOGY] must count them too.
+ *
+ * The voters form the configuration of the channel, unless only some of them are [members]: the others vote, but
+ * their votes don't count, and they never lead, so they follow the decision as learners. The configuration can be
+ * changed while running ([reconfigure]), by joint consensus: until the decision, the quorums must be quorums of both
+ * the old and the new configuration.
  *
  * @author Luca Anzalone
  */
 public class Channel {
     private final Logger log = Logger.getLogger("Channel");
+    private final int size;             // voters
+    private final int learners;
     private final List<Node> nodes = new ArrayList<>();
     public  final Summary summary  = new Summary();
+    public  final SafetyChecker safety;
+    final Timeline timeline;  // null, unless [Globals.TRACE_FILE] is set
+    private final Topology topology;
+    private final List<Map<Integer, List<Message>>> outbox;  // of each sender: the buffered messages, by receiver
+    private final List<Map<Integer, ArrayDeque<Message>>> backlog;  // (blockSender) of each sender: the held messages
+    private final AtomicLongArray sequences;  // last sequence number of each sender (deduplication only, or null)
+    private long startTime;
+    private volatile boolean halted = false;
+    private EventLoopGroup loops;       // null: a thread per node
+    private final List<Thread> threads = new ArrayList<>();  // of the nodes (thread per node only)
+    private CountDownLatch running;     // nodes not yet terminated (event loops only)
+    private BiConsumer<Integer, Integer> listener;  // told of each decision, by the deciding node (see [onDecision])
+    // configuration
+    private volatile int[] members;     // the ranks of the voters whose votes count (null: every voter)
+    private volatile int[] joining;     // (joint consensus) the ranks of the next configuration, or null
+    private volatile int reconfigurations = 0;
+    private final Set<Integer> voters;  // every voter, as known nodes (see [isQuorum])
+    // snapshots
+    private final int[] proposals;
+    private final Map<Integer, Payload> payloads = new HashMap<>();  // of the proposed values (empty: no payloads)
+    private final boolean recording = SNAPSHOTS;
+    private final ReadWriteLock gate = new ReentrantReadWriteLock();  // steps and deliveries share it, snapshots don't
+    private final Set<Snapshot.InFlight> inFlight = ConcurrentHashMap.newKeySet();
+    private Snapshot forkedFrom;        // the in-flight messages and the elapsed time to restore on [launch]
+    // multi-group
+    private final Cluster cluster;      // null: a standalone group
+    private final int group;            // the id of the group, in the [cluster]
+    private final int owner;            // the node preferred by the elections (see [Cluster], multi-leader)
 
 
     public Channel(@NotNull int... values) {
+        this(null, 0, 0, values);
+    }
+
+    /**
+     * A group of the given [cluster] (see [Cluster]): its nodes are stepped, and its envelopes carried, by it.
+     * The elections prefer the node [owner], then the next ranks (round-robin).
+     */
+    Channel(final Cluster cluster, int group, int owner, @NotNull int... values) {
+        assert owner >= 0 && owner < values.length;
+
+        this.cluster = cluster;
+        this.group = group;
+        this.owner = owner;
+
         int numNodes = values.length;
+        size = numNodes;
+        learners = (cluster != null) ? 0 : LEARNERS;  // the groups of a cluster have voters only
+        proposals = values.clone();
         summary.totalNodes = numNodes;
+        summary.learners = learners;
+        QUORUM.validate(numNodes);
+
+        if (learners < 0)
+            throw new IllegalArgumentException("negative number of learners: " + learners);
+
+        final int total = numNodes + learners;
+        topology = (TOPOLOGY != null) ? TOPOLOGY : new Topology(total);
+        assert topology.size() == total;
+
+        // only the links used get a buffer: most of them never carry a message with a large cluster
+        outbox = COALESCING ? new ArrayList<>(total) : null;
+        sequences = DEDUPLICATION ? new AtomicLongArray(total) : null;
+
+        for (int rank = 0; COALESCING && rank < total; ++rank)
+            outbox.add(new LinkedHashMap<>());
+
+        // the groups of a cluster share the mailboxes of the machines: their senders are never held
+        final boolean holding = MAILBOX_POLICY == Mailbox.Policy.blockSender && MAILBOX_CAPACITY > 0 && cluster == null;
+        backlog = holding ? new ArrayList<>(total) : null;
+
+        for (int rank = 0; holding && rank < total; ++rank)
+            backlog.add(new LinkedHashMap<>());
+
+        safety = new SafetyChecker(total, SAFETY_CHECK);
+        timeline = Timeline.open(TRACE_FILE, total);
 
         // creating nodes
         for (int rank = 0; rank < numNodes; ++rank) {
             nodes.add(new Node(this, rank, values[rank]));
+            safety.proposed(rank, values[rank]);
+
+            if (PAYLOAD_SIZE > 0)
+                payloads.computeIfAbsent(values[rank], value -> new Payload(value, PAYLOAD_SIZE));
         }
+
+        for (int rank = numNodes; rank < total; ++rank)
+            nodes.add(new Node(this, rank));
+
+        summary.egress = new long[total];
+
+        final Set<Integer> all = new TreeSet<>();
+
+        for (int rank = 0; rank < numNodes; ++rank)
+            all.add(rank);
+
+        voters = Collections.unmodifiableSet(all);
+    }
+
+    /**
+     * Creates a channel with the state of the given [snapshot]: launching it continues the execution from the
+     * snapshot (the nodes, their mailboxes and the in-flight messages are restored, every time moved forward).
+     * The summary of the fork only counts what happens after the snapshot.
+     */
+    public static Channel fork(@NotNull Snapshot snapshot) {
+        final Channel channel = new Channel(snapshot.getProposals());
+        channel.forkedFrom = snapshot;
+        return channel;
     }
 
     /** starts each node */
     public Channel launch() {
         summary.startTime();  // take the initial time
+        startTime = System.currentTimeMillis();
+        topology.reset();
 
-        for (Node node: nodes)
-            node.start();
+        if (forkedFrom != null)
+            restore(forkedFrom);
+        else if (DIGEST_CONSENSUS && !payloads.isEmpty())
+            spreadPayloads();
+
+        if (cluster != null) {
+            for (Node node: nodes)
+                node.prepare();
+        } else if (EVENT_LOOPS > 0) {
+            loops = new EventLoopGroup(EVENT_LOOPS).start();
+            running = new CountDownLatch(nodes.size());
+
+            for (Node node: nodes) {
+                node.prepare();
+                loops.schedule(node.getRank(), 0, () -> step(node));
+            }
+        } else {
+            for (Node node: nodes) {
+                final Thread thread = new Thread(node, "Node-" + node.getRank());
+                threads.add(thread);
+                thread.start();
+            }
+        }
 
         return this;
     }
 
-    /** execute the given [callback] after all nodes execution are terminated */
+    /** event-loop driver: a step of the [node], then the next one after its execution speed */
+    private void step(@NotNull final Node node) {
+        if (node.step()) {
+            loops.schedule(node.getRank(), node.getExeSpeed(), () -> step(node));
+        } else {
+            node.finish();
+            running.countDown();
+        }
+    }
+
+    private void restore(@NotNull Snapshot snapshot) {
+        final long now = startTime;
+        final long shift = now - snapshot.getTakenAt();
+        startTime -= snapshot.getElapsed();  // so that the topology schedule (partitions, heals) goes on
+
+        // the senders go on numbering from where they were: the windows of the receivers are restored too
+        final long[] counters = snapshot.getSequences();
+
+        for (int rank = 0; sequences != null && counters != null && rank < counters.length; ++rank)
+            sequences.set(rank, counters[rank]);
+
+        for (Snapshot.NodeState state: snapshot.getNodes()) {
+            nodes.get(state.getRank()).restore(state, shift);
+            safety.promised(state.getRank(), state.getCommit());
+
+            if (state.hasDecided()) {
+                safety.decided(state.getRank(), state.value);
+                summary.decidedValue(state.getRank(), state.value);
+            }
+        }
+
+        // the in-flight messages are sent again, with their remaining delay
+        for (Snapshot.InFlight flight: snapshot.getInFlight()) {
+            final long due = flight.due + shift;
+            dispatch(flight.from, flight.to, flight.envelope, due, Math.max(0, due - now));
+        }
+    }
+
+    /**
+     * Captures the state of the whole cluster, without stopping it (it needs [Globals.SNAPSHOTS]).
+     * The nodes are paused for the time of the capture: it waits the end of the current steps and deliveries.
+     * It must not be called by a node, nor by an event loop.
+     */
+    public Snapshot snapshot() {
+        if (!recording || cluster != null)
+            throw new IllegalStateException("the channel doesn't track the in-flight messages, see Globals.SNAPSHOTS");
+
+        if (members != null || joining != null)
+            throw new IllegalStateException("the configuration of the channel is not part of a snapshot");
+
+        gate.writeLock().lock();
+
+        try {
+            final long now = System.currentTimeMillis();
+            final List<Snapshot.NodeState> states = new ArrayList<>(nodes.size());
+            final List<Snapshot.InFlight> flights = new ArrayList<>(inFlight);
+
+            for (Node node: nodes)
+                states.add(node.capture());
+
+            long[] counters = null;
+
+            if (sequences != null) {
+                counters = new long[sequences.length()];
+
+                for (int rank = 0; rank < counters.length; ++rank)
+                    counters[rank] = sequences.get(rank);
+            }
+
+            flights.sort(Comparator.comparingLong(flight -> flight.due));
+            return new Snapshot(now, now - startTime, proposals.clone(), counters, states, flights);
+        } finally {
+            gate.writeLock().unlock();
+        }
+    }
+
+    /** a step of a node, or a delivery, begins (see [snapshot]) */
+    void enter() {
+        if (recording)
+            gate.readLock().lock();
+    }
+
+    void leave() {
+        if (recording)
+            gate.readLock().unlock();
+    }
+
+    /**
+     * execute the given [callback] after all nodes execution are terminated.
+     * If the safety checker found a violation, it's thrown instead.
+     */
     public void onTermination(@NotNull Consumer<Channel> callback) {
+        if (loops != null) {
+            try { running.await(); } catch (InterruptedException ignored) { }
+
+            loops.shutdown();
+            summary.eventLoops(loops);
+        } else {
+            for (Thread thread: threads) {
+                try { thread.join(); } catch (InterruptedException ignored) { }
+            }
+        }
+
         for (Node node: nodes) {
-            try { node.join(); } catch (InterruptedException ignored) { }
+            summary.suppressedMessages += node.getSuppressed();
+
+            final Mailbox mailbox = node.getMailbox();
+            summary.shedMessages += mailbox.getShed();
+            summary.maxMailbox = Math.max(summary.maxMailbox, mailbox.getMaxSize());
         }
 
+        summary.amnesias = safety.getAmnesias();
+
+        if (safety.getViolation() != null)
+            throw safety.getViolation();
+
         callback.accept(this);
     }
 
-    /** sends a [message] across the simulated communication channel */
+    /**
+     * The given [listener] is called by each node, on its own thread (or event loop), as soon as it learns the
+     * decision: with its rank and the decided value. It must be set before [launch].
+     */
+    public Channel onDecision(@NotNull BiConsumer<Integer, Integer> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /** the node [rank] has learnt the decided [value] */
+    void learnt(int rank, int value) {
+        if (listener != null)
+            listener.accept(rank, value);
+    }
+
+    /** stops every node as soon as possible (e.g. after a safety violation) */
+    public void halt() {
+        halted = true;
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
+    Node getNode(int rank) {
+        return nodes.get(rank);
+    }
+
+    /** the rank preferred by the elections: the lowest one, unless the group is owned by another node */
+    int getOwner() {
+        return owner;
+    }
+
+    /** the cluster hosting this group, or null */
+    Cluster getCluster() {
+        return cluster;
+    }
+
+    /** number of voters in the channel (the quorums are made of them) */
+    public int size() {
+        return size;
+    }
+
+    /** number of nodes in the channel: the voters and the learners */
+    public int totalSize() {
+        return size + learners;
+    }
+
+    public int getLearners() {
+        return learners;
+    }
+
+    /** whether the node of the given [rank] is a learner */
+    public boolean isLearner(int rank) {
+        return rank >= size;
+    }
+
+    /**
+     * Only the voters of the given [ranks] form the configuration: the votes of the others don't count, and they
+     * never lead. It must be called before [launch].
+     */
+    public Channel members(@NotNull int... ranks) {
+        members = checkConfiguration(ranks);
+        reconfigurations++;
+        return this;
+    }
+
+    /**
+     * Changes the configuration to the voters of the given [ranks], while running: from now on a quorum must be a
+     * quorum of the current configuration and of the new one (joint consensus), so it intersects the quorums of
+     * both. A channel decides a single value: the new configuration alone is for the next instances.
+     */
+    public void reconfigure(@NotNull int... ranks) {
+        joining = checkConfiguration(ranks);
+        reconfigurations++;
+    }
+
+    private int[] checkConfiguration(@NotNull int[] ranks) {
+        if (ranks.length == 0)
+            throw new IllegalArgumentException("a configuration needs at least one voter");
+
+        for (int rank: ranks) {
+            if (rank < 0 || rank >= size)
+                throw new IllegalArgumentException("not a voter of the channel: " + rank);
+        }
+
+        QUORUM.validate(ranks.length);
+        return ranks.clone();
+    }
+
+    /** whether the votes of the node [rank] count, in the current (or in the joining) configuration */
+    public boolean isMember(int rank) {
+        return contains(members, rank) || (joining != null && contains(joining, rank));
+    }
+
+    /** the ranks of the current configuration (the joining one, once set) */
+    public int[] getMembers() {
+        final int[] configuration = (joining != null) ? joining : members;
+        return (configuration != null) ? configuration.clone() : voters.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** the number of changes of the configuration ([members] and [reconfigure]) */
+    int getReconfigurations() {
+        return reconfigurations;
+    }
+
+    /** every voter of the channel, member or not */
+    Set<Integer> getVoters() {
+        return voters;
+    }
+
+    /**
+     * Whether the [votes] form a phase 1 (or phase 2) quorum of the configuration, as [Globals.QUORUM] does, and (joint
+     * consensus) a quorum of the joining configuration too. Only the votes of the members count, against all of them.
+     */
+    boolean isQuorum(@NotNull Set<Integer> votes, boolean phase1) {
+        final int[] current = members;
+        final int[] next = joining;
+
+        return isQuorum(current, votes, phase1) && (next == null || isQuorum(next, votes, phase1));
+    }
+
+    /**
+     * The quorum systems number the voters from 0: each member is counted by its position in the [configuration]
+     * (null: every voter, by rank).
+     */
+    private boolean isQuorum(int[] configuration, @NotNull Set<Integer> votes, boolean phase1) {
+        if (configuration == null)
+            return phase1 ? QUORUM.isPhase1Quorum(votes, size) : QUORUM.isPhase2Quorum(votes, size);
+
+        final Set<Integer> voted = new TreeSet<>();
+
+        for (int i = 0; i < configuration.length; ++i) {
+            if (votes.contains(configuration[i]))
+                voted.add(i);
+        }
+
+        return phase1 ? QUORUM.isPhase1Quorum(voted, configuration.length)
+                      : QUORUM.isPhase2Quorum(voted, configuration.length);
+    }
+
+    private static boolean contains(int[] configuration, int rank) {
+        if (configuration == null)
+            return true;
+
+        for (int member: configuration) {
+            if (member == rank)
+                return true;
+        }
+
+        return false;
+    }
+
+    /** sends a [message] across the simulated communication channel (messages are immutable, so no copy is made) */
     public void send(@NotNull final Node from, int to, @NotNull final Message message) {
+        post(from, to, stamp(from, carry(message)));
+    }
+
+    /** attaches to the [message] the payload of its value (or its digest), if any */
+    private Message carry(@NotNull final Message message) {
+        if (payloads.isEmpty() || !message.hasValue())
+            return message;
+
+        final Payload payload = payloads.get(message.getValue());
+
+        if (payload == null)
+            return message;
+
+        return message.withPayload(DIGEST_CONSENSUS ? payload.digest() : payload.data());
+    }
+
+    /**
+     * Each node sends its payload to the others, out-of-band: the consensus then agrees on the digests. With
+     * [Globals.BANDWIDTH] the nodes start once the payloads have arrived (one transfer per link, in parallel).
+     */
+    private void spreadPayloads() {
+        long transfer = 0;
+
+        for (int rank = 0; rank < size; ++rank) {
+            final int bytes = payloads.get(proposals[rank]).size();
+            summary.sentOutOfBand(rank, (long) (nodes.size() - 1) * bytes);
+            transfer = Math.max(transfer, transferTime(bytes));
+        }
+
+        if (transfer > 0)
+            try { Thread.sleep(transfer); } catch (InterruptedException ignored) { }
+    }
+
+    /** the time (ms) [bytes] take on a link, at [Globals.BANDWIDTH] bytes per ms (none, when unlimited) */
+    private static long transferTime(long bytes) {
+        return (BANDWIDTH > 0) ? (bytes + BANDWIDTH - 1) / BANDWIDTH : 0;
+    }
+
+    /** a message whose payload (or digest) doesn't match its value has been corrupted on the wire: it's dropped */
+    private boolean verified(@NotNull final Message message, int to) {
+        final ByteBuffer carried = message.getPayload();
+
+        if (carried == null)
+            return true;
+
+        final Payload payload = payloads.get(message.getValue());
+
+        if (payload != null && payload.matches(carried))
+            return true;
+
+        summary.lostMessages++;
+        logIf(Debug.MSG_LOST, "CORRUPTED payload of {%s} to [%d]", message, to);
+        return false;
+    }
+
+    /** with [Globals.DEDUPLICATION], gives the [message] the next sequence number of its sender */
+    private Message stamp(@NotNull final Node from, @NotNull final Message message) {
+        if (!DEDUPLICATION)
+            return message;
+
+        return message.withSequence(sequences.incrementAndGet(from.getRank()));
+    }
+
+    private void post(@NotNull final Node from, int to, @NotNull final Message message) {
         assert to < nodes.size();
+        assert message.getSender() == from.getRank();
+
+        if (Debug.isLogging(Debug.MSG_SENDING))
+            Debug.log(String.format("15%d %s", System.currentTimeMillis(), from.getRound()),
+                    "SENDING of {%s} from [%d] to [%d]", message, from.getRank(), to);
+
+        logIf(Debug.MSG_SENDING, "SENDING of {%s} from [%d] to [%d]", message, from.getRank(), to);
+        summary.totalMessages++;
+        summary.sent(from.getRank(), message.bytes());
+        safety.sent(message);
+        MessageSendEvent.emit(message, to);
 
-        new SenderThread(from, to, message.copy())
-                .start();
+        if (message.getType().isElection())
+            summary.electionMessages++;
+
+        if (message.getType().isReply())
+            summary.replies++;
+
+        if (message.getType().isPhase())
+            summary.phaseMessages++;
+
+        if (message.getType() == Message.Type.success)
+            summary.successMessages++;
+
+        // back-pressure: a message for a full mailbox waits at the sender, on its own link, while the other links
+        // (e.g. of the same broadcast) go on
+        if (backlog != null && from.getRank() != to && hold(from, to, message))
+            return;
+
+        enqueue(from, to, message);
     }
 
-    /** broadcasts the given [message] */
+    /** the [message] leaves: at once, or with the next [flush] when [Globals.COALESCING] is enabled */
+    private void enqueue(@NotNull final Node from, int to, @NotNull final Message message) {
+        if (COALESCING && from.getRank() != to) {
+            final Map<Integer, List<Message>> links = outbox.get(from.getRank());
+
+            synchronized (links) {
+                links.computeIfAbsent(to, link -> new ArrayList<>()).add(message);
+            }
+            return;
+        }
+
+        transmit(from, to, Collections.singletonList(message));
+    }
+
+    /**
+     * Sends, as a single envelope per link, the messages buffered by [from] since the last flush, after the held ones
+     * that now find room (see [hold]). It's called by the node at the end of each computation step.
+     */
+    public void flush(@NotNull final Node from) {
+        if (backlog != null)
+            release(from);
+
+        if (!COALESCING)
+            return;
+
+        final Map<Integer, List<Message>> links = outbox.get(from.getRank());
+
+        synchronized (links) {
+            for (Map.Entry<Integer, List<Message>> link: links.entrySet())
+                transmit(from, link.getKey(), link.getValue());
+
+            links.clear();
+        }
+    }
+
+    /**
+     * (blockSender) Holds the [message] on the link (from, to) if the mailbox of [to] is full, or if older messages
+     * are already held on that link (they leave in order). A link holds at most [Globals.MAILBOX_CAPACITY] messages:
+     * beyond it, the oldest one is shed. Returns false if the message can leave now.
+     */
+    private boolean hold(@NotNull final Node from, int to, @NotNull final Message message) {
+        final Map<Integer, ArrayDeque<Message>> links = backlog.get(from.getRank());
+
+        synchronized (links) {
+            final ArrayDeque<Message> link = links.get(to);
+
+            if ((link == null || link.isEmpty()) && nodes.get(to).getMailbox().hasRoom())
+                return false;
+
+            final ArrayDeque<Message> held = links.computeIfAbsent(to, id -> new ArrayDeque<>());
+            held.add(message);
+            summary.blockedSends++;
+
+            if (held.size() > MAILBOX_CAPACITY) {
+                held.poll();
+                summary.shedMessages++;
+            }
+
+            return true;
+        }
+    }
+
+    /** (blockSender) the messages held by [from] leave: on each link, as many as the room of the receiver */
+    private void release(@NotNull final Node from) {
+        final Map<Integer, ArrayDeque<Message>> links = backlog.get(from.getRank());
+
+        synchronized (links) {
+            for (Map.Entry<Integer, ArrayDeque<Message>> link: links.entrySet()) {
+                final Mailbox mailbox = nodes.get(link.getKey()).getMailbox();
+                final ArrayDeque<Message> held = link.getValue();
+
+                for (int room = mailbox.getCapacity() - mailbox.size(); room > 0 && !held.isEmpty(); --room)
+                    enqueue(from, link.getKey(), held.poll());
+            }
+
+            links.values().removeIf(ArrayDeque::isEmpty);
+        }
+    }
+
+    /**
+     * broadcasts the given [message] (a single instance, with a single sequence number): to the voters, and to the
+     * learners too if it's a [success]
+     */
     public void broadcast(@NotNull final Node from, @NotNull final Message message, boolean sendToMe) {
+        final Message stamped = stamp(from, carry(message));
+        final boolean toLearners = message.getType() == Message.Type.success;
+
         for (Node node: nodes) {
             if (!sendToMe && from.equals(node))
                 continue;
 
-            send(from, node.getRank(), message);
+            if (!toLearners && isLearner(node.getRank()))
+                continue;
+
+            post(from, node.getRank(), stamped);
         }
     }
 
+    /** sends the given [message] to the nodes of the given [ranks] (a single instance, with a single sequence number) */
+    public void multicast(@NotNull final Node from, @NotNull final Message message, @NotNull Collection<Integer> ranks) {
+        final Message stamped = stamp(from, carry(message));
+
+        for (int to: ranks)
+            post(from, to, stamped);
+    }
+
     /** shorthand */
     public void broadcast(@NotNull final Node from, @NotNull final Message message) {
         broadcast(from, message, false);
@@ -79,60 +696,145 @@ public class Channel {
 
     // -----------------------------------------------------------------------------------------------------------------
 
+    /** sends an envelope: on a [SenderThread], or as an event on the loop of the receiver */
+    private void transmit(@NotNull final Node from, final int to, @NotNull final List<Message> envelope) {
+        summary.deliveries++;
+
+        final long delay = networkDelay(from, to, envelope);
+
+        if (delay < 0)
+            return;
+
+        if (cluster != null)
+            cluster.transmit(group, from.getRank(), to, envelope);  // the frame has its own delay
+        else
+            dispatch(from.getRank(), to, envelope, System.currentTimeMillis() + delay, delay);
+    }
+
+    /** delivers the envelope after [delay] ms (at time [due]) */
+    private void dispatch(int from, int to, @NotNull final List<Message> envelope, long due, long delay) {
+        final Snapshot.InFlight flight = recording ? new Snapshot.InFlight(from, to, envelope, due) : null;
+
+        final EnvelopeFlightEvent event = EnvelopeFlightEvent.dispatched(from, to, envelope);
+        final long flow = (timeline != null) ? timeline.sent(from, to, envelope, delay) : 0;
+
+        if (flight != null)
+            inFlight.add(flight);
+
+        if (loops != null)
+            loops.schedule(to, delay, () -> deliver(to, envelope, flight, event, flow));
+        else
+            new SenderThread(to, envelope, flight, event, flow, delay)
+                    .start();
+    }
+
     /**
-     * Makes the send operation non-blocking (async)
+     * Applies the network errors to an envelope from [from] to [to] (only if receiver != sender).
+     * Returns the delay (ms) of the envelope, or -1 if it has been lost.
+     */
+    private long networkDelay(@NotNull final Node from, final int to, @NotNull final List<Message> envelope) {
+        if (from.getRank() == to)
+            return 0;
+
+        topology.update(System.currentTimeMillis() - startTime);
+
+        if (topology.isPartitioned(from.getRank(), to)) {
+            summary.lostMessages += envelope.size();
+            traceLost(from.getRank(), to, envelope);
+            logIf(Debug.MSG_LOST, "PARTITIONED %s from [%d] to [%d]", envelope, from.getRank(), to);
+            return -1;
+        }
+
+        if (topology.isLost(from.getRank(), to, ThreadLocalRandom.current())) {
+            summary.lostMessages += envelope.size();
+            traceLost(from.getRank(), to, envelope);
+            logIf(Debug.MSG_LOST, "LOST of %s from [%d] to [%d]", envelope, from.getRank(), to);
+
+            if (Debug.EXECUTIONS_LOG)
+                Debug.log(String.format("15%d %s", System.currentTimeMillis(), from.getRound()),
+                        "LOST of %s from [%d] to [%d]", envelope, from.getRank(), to);
+            return -1;
+        }
+
+        long bytes = 0;
+
+        for (Message message: envelope)
+            bytes += message.bytes();
+
+        // the envelopes of a link are not queued behind each other: only their own size counts
+        return Math.max(0, topology.delay(from.getRank(), to, ThreadLocalRandom.current())) + transferTime(bytes);
+    }
+
+    /** the envelope is unpacked on receipt */
+    private void deliver(int to, @NotNull final List<Message> envelope, final Snapshot.InFlight flight,
+                         final EnvelopeFlightEvent event, long flow) {
+        final Node receiver = nodes.get(to);
+        enter();
+
+        try {
+            if (flight != null)
+                inFlight.remove(flight);
+
+            if (timeline != null && flow > 0)
+                timeline.delivered(to, envelope, flow);
+
+            for (Message message: envelope) {
+                if (verified(message, to))
+                    receiver.receive(message);
+            }
+        } finally {
+            leave();
+        }
+
+        if (event != null)
+            event.delivered();
+    }
+
+    /** an envelope carried by the [cluster] has reached the node [to] */
+    void receive(int to, @NotNull final List<Message> envelope) {
+        deliver(to, envelope, null, null, 0);
+    }
+
+    /**
+     * Makes the send operation non-blocking (async).
+     * An envelope of one or more messages is delayed or lost as a unit, and unpacked on receipt.
      */
     private class SenderThread extends Thread {
-        private final Node from;
         private final int to;
-        private final Message message;
+        private final List<Message> envelope;
+        private final Snapshot.InFlight flight;
+        private final EnvelopeFlightEvent event;  // null, unless profiled
+        private final long flow;                  // trace id of the envelope (see [Timeline])
+        private final long delay;
 
-        SenderThread(final Node from, final int to, final Message message) {
-            this.from = from;
+        SenderThread(final int to, final List<Message> envelope, final Snapshot.InFlight flight,
+                     final EnvelopeFlightEvent event, long flow, long delay) {
             this.to = to;
-            this.message = message;
-            this.message.setSender(from.getRank());
-
-            Debug.logIf(Debug.MSG_SENDING, String.format("15%d %s", System.currentTimeMillis(), from.getRound()),
-                    "SENDING of {%s} from [%d] to [%d]", message, from.getRank(), to);
-            logIf(Debug.MSG_SENDING, "SENDING of {%s} from [%d] to [%d]", message, from.getRank(), to);
-            summary.totalMessages++;
+            this.envelope = envelope;
+            this.flight = flight;
+            this.event = event;
+            this.flow = flow;
+            this.delay = delay;
         }
 
         @Override
         public void run() {
-            final Node receiver = nodes.get(to);
-
-            // apply network delay and errors only if receiver != sender
-            if (from.getRank() != receiver.getRank()) {
-                if (channelError()) {
-                    summary.lostMessages++;
-                    logIf(Debug.MSG_LOST, "LOST of {%s} from [%d] to [%d]", message, from.getRank(), to);
-                    Debug.log(String.format("15%d %s", System.currentTimeMillis(), from.getRound()),
-                            "LOST of {%s} from [%d] to [%d]", message, from.getRank(), to);
-                    return;
-                }
-
-                sendDelay();
-            }
+            if (delay > 0)
+                try { sleep(delay); } catch (InterruptedException ignored) { }
 
-            receiver.receive(message);
+            deliver(to, envelope, flight, event, flow);
         }
+    }
 
-        /** simulate the network (communication) delay */
-        private void sendDelay() {
-            final Random generator = new Random();
-            try { sleep(generator.nextInt(1 + CHANNEL_DELAY)); } catch (InterruptedException ignored) { }
-        }
+    private void traceLost(int from, int to, @NotNull final List<Message> envelope) {
+        if (timeline != null)
+            timeline.lost(from, to, envelope);
     }
 
     // -----------------------------------------------------------------------------------------------------------------
-    /** simulate an error on the channel (with sudden lost of a message) */
-    private boolean channelError() {
-        final Random generator = new Random();
-        int guess = 1 + generator.nextInt(100);
-
-        return guess <= MESSAGE_LOST_RATE;
+    /** simulate the duplication of a message sent from [from] to [to] */
+    public boolean duplication(int from, int to) {
+        return topology.isDuplicated(from, to, ThreadLocalRandom.current());
     }
 
     private void logIf(boolean flag, final String format, Object...args) {
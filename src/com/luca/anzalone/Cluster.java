@@ -0,0 +1,469 @@
+package com.luca.anzalone;
+
+import com.luca.anzalone.network.FailureDetector;
+import com.luca.anzalone.network.Topology;
+import com.luca.anzalone.runtime.EventLoopGroup;
+import com.luca.anzalone.scenario.Scenario;
+import com.luca.anzalone.utils.Debug;
+import com.luca.anzalone.utils.Message;
+import com.sun.istack.internal.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.luca.anzalone.utils.Globals.*;
+
+/**
+ * A Cluster hosts many independent Paxos groups (e.g. one per data range) on the same machines: every group is a
+ * [Channel] of [machines] nodes, and the node [rank] of every group runs on the machine [rank].
+ * The groups share:
+ *   - the scheduler: the machines are pinned to a few event loops, and a single timer per machine steps all the
+ *     nodes it hosts, instead of a timer per node (so the waits of the nodes are checked at the machine ticks);
+ *   - the transport: the envelopes sent from a machine to another, within the same event, leave as a single
+ *     [Frame], where each envelope is tagged with the id of its group;
+ *   - the failure detection (with [Globals.FAILURE_DETECTOR]): a detector per machine, fed by machine-level
+ *     heartbeats, is the view of all the nodes of that machine (so it detects the machines, not the replicas).
+ *
+ * By default every group is led by the node 0, so the machine 0 leads them all. With [Globals.MULTI_LEADER] the
+ * groups are instances owned round-robin by the machines, as in Mencius: the group [g] is owned by the machine
+ * [g % machines], its elections prefer the owner, and only the owner proposes a command (the other nodes propose
+ * the no-op [NOOP]). An owner without a command skips its instance, deciding the no-op at once with a [success].
+ *
+ * The lost and duplicated messages are decided by each group, as usual; a frame is delayed as a unit.
+ * The parameters are the ones of [Globals], for every group; the snapshots aren't supported, and the executions log
+ * (a single one for all the groups) is better disabled ([Debug.EXECUTIONS_LOG]).
+ *
+ * Usage: scenario.properties [groups...] (the decisions per second, as the number of groups grows)
+ * See [scenario.MultiLeaderBenchmark] for the single-leader and multi-leader modes compared.
+ *
+ * @author Luca Anzalone
+ */
+public class Cluster {
+    private static final int MACHINE = -1;      // the group of the machine-level messages (heartbeats)
+    public static final int NOOP = -1;          // the value that skips an instance (multi-leader)
+
+    private final int machines;
+    private final Channel[] groups;
+    private final FailureDetector[] detectors;  // one per machine ([Globals.FAILURE_DETECTOR] only)
+    private final Topology transport;           // delay of the frames (and loss of the heartbeats)
+    private final int[][] active;               // groups whose node is still running, on each machine
+    private final int[] activeCount;
+    private final int[] speed;                  // ms between two ticks of each machine
+    private final Frame[][] outbox;             // frame being filled, for each link [from][to]
+    private final AtomicIntegerArray pending;   // nodes still running, for each group
+    private final boolean multiLeader;
+    private EventLoopGroup loops;
+    private CountDownLatch running;             // groups not yet terminated
+    // stats
+    private final LongAdder frames     = new LongAdder();
+    private final LongAdder envelopes  = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder ticks      = new LongAdder();
+    private final LongAdder skips      = new LongAdder();
+    private final AtomicLongArray sent;         // messages sent to the other machines, by each machine
+    private final AtomicLongArray received;     // messages received from the other machines, by each machine
+    private long startTime;
+    private long elapsed;
+    private long messages;
+    private int agreements;
+    private int commands;                       // decided values other than the no-op
+    private double utilisation;
+
+
+    /** [groups] groups, whose nodes propose the given [values] */
+    public Cluster(int groups, @NotNull int... values) {
+        this(repeat(groups, values));
+    }
+
+    /** a group for each row of [values]: the proposals of its nodes (the no-op, in the instances of other nodes) */
+    public Cluster(@NotNull int[][] values) {
+        if (values.length < 1)
+            throw new IllegalArgumentException("at least one group is needed: " + values.length);
+
+        final int groups = values.length;
+        final Random random = ThreadLocalRandom.current();
+        multiLeader = MULTI_LEADER;
+        machines  = values[0].length;
+        sent      = new AtomicLongArray(machines);
+        received  = new AtomicLongArray(machines);
+        transport = (TOPOLOGY != null) ? TOPOLOGY : new Topology(machines);
+        detectors = new FailureDetector[machines];
+        speed     = new int[machines];
+
+        for (int machine = 0; machine < machines; ++machine) {
+            if (FAILURE_DETECTOR)
+                detectors[machine] = new FailureDetector(machine, machines);
+
+            speed[machine] = 1 + random.nextInt(Math.max(1, MAX_EXE_SPEED));
+        }
+
+        this.groups = new Channel[groups];
+        pending = new AtomicIntegerArray(groups);
+
+        for (int group = 0; group < groups; ++group) {
+            if (values[group].length != machines)
+                throw new IllegalArgumentException("every group needs " + machines + " values: group " + group);
+
+            final int owner = multiLeader ? group % machines : 0;
+            final int[] proposals = values[group].clone();
+
+            // Mencius: in the instance of another machine, a node can only propose the no-op
+            if (multiLeader) {
+                for (int rank = 0; rank < machines; ++rank) {
+                    if (rank != owner)
+                        proposals[rank] = NOOP;
+                }
+            }
+
+            this.groups[group] = new Channel(this, group, owner, proposals);
+            pending.set(group, machines);
+        }
+
+        active = new int[machines][groups];
+        activeCount = new int[machines];
+        outbox = new Frame[machines][machines];
+
+        for (int machine = 0; machine < machines; ++machine) {
+            for (int group = 0; group < groups; ++group)
+                active[machine][group] = group;
+
+            activeCount[machine] = groups;
+        }
+    }
+
+    /** starts every group, on [Globals.EVENT_LOOPS] loops (the available processors, if not set) */
+    public Cluster launch() {
+        final int size = (EVENT_LOOPS > 0) ? EVENT_LOOPS : Runtime.getRuntime().availableProcessors();
+
+        loops = new EventLoopGroup(Math.min(size, machines)).start();
+        running = new CountDownLatch(groups.length);
+        startTime = System.currentTimeMillis();
+        transport.reset();
+
+        for (int machine = 0; FAILURE_DETECTOR && machine < machines; ++machine)
+            detectors[machine].reset(startTime);
+
+        for (Channel group: groups)
+            group.launch();  // prepares the nodes: the machines step them
+
+        for (int machine = 0; machine < machines; ++machine) {
+            final int m = machine;
+            loops.schedule(m, 0, () -> tick(m));
+        }
+
+        return this;
+    }
+
+    /** waits the termination of every group, then collects the results */
+    public Cluster awaitTermination() {
+        try { running.await(); } catch (InterruptedException ignored) { }
+
+        elapsed = System.currentTimeMillis() - startTime;
+        loops.shutdown();
+
+        for (int i = 0; i < loops.size(); ++i)
+            utilisation += loops.get(i).utilisation() / loops.size();
+
+        for (Channel group: groups) {
+            group.onTermination(channel -> {
+                channel.summary.finishTime();
+                messages   += channel.summary.totalMessages;
+                agreements += channel.summary.agreement ? 1 : 0;
+
+                if (channel.summary.agreement && channel.getNode(0).getValue() != NOOP)
+                    commands++;
+            });
+        }
+
+        return this;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Scheduler
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** a step of every node running on [machine], then the next tick after the speed of the machine */
+    private void tick(int machine) {
+        ticks.increment();
+
+        if (FAILURE_DETECTOR)
+            beat(machine);
+
+        final int[] ids = active[machine];
+        int count = activeCount[machine];
+
+        for (int i = 0; i < count; ) {
+            final Node node = groups[ids[i]].getNode(machine);
+
+            if (node.step()) {
+                ++i;
+                continue;
+            }
+
+            node.finish();
+
+            if (pending.decrementAndGet(ids[i]) == 0)
+                running.countDown();
+
+            ids[i] = ids[--count];
+        }
+
+        activeCount[machine] = count;
+        flush(machine);
+
+        if (count > 0)
+            loops.schedule(machine, speed[machine], () -> tick(machine));
+    }
+
+    /** gossips the heartbeat counters of [machine] to a random machine (once every [HEARTBEAT_INTERVAL] ms) */
+    private void beat(int machine) {
+        final long now = System.currentTimeMillis();
+        final Random random = ThreadLocalRandom.current();
+
+        if (machines < 2 || !detectors[machine].shouldBeat(now))
+            return;
+
+        int peer = random.nextInt(machines - 1);
+
+        if (peer >= machine)
+            peer++;
+
+        heartbeats.increment();
+        transport.update(now - startTime);
+
+        if (transport.isPartitioned(machine, peer) || transport.isLost(machine, peer, random))
+            return;
+
+        final Message beat = new Message(Message.Type.heartbeat, machine, detectors[machine].beat(now));
+        frame(machine, peer).add(MACHINE, Collections.singletonList(beat));
+    }
+
+    /** the detector shared by the nodes of [machine] */
+    FailureDetector getDetector(int machine) {
+        return detectors[machine];
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Transport
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** an [envelope] of [group] leaves the machine [from] (called by the channel, on the loop of [from]) */
+    void transmit(int group, int from, int to, @NotNull List<Message> envelope) {
+        envelopes.increment();
+
+        if (from != to) {
+            sent.addAndGet(from, envelope.size());
+            received.addAndGet(to, envelope.size());
+        }
+
+        frame(from, to).add(group, envelope);
+    }
+
+    /** (multi-leader) an idle owner skipped its instance */
+    void skipped() {
+        skips.increment();
+    }
+
+    boolean isMultiLeader() {
+        return multiLeader;
+    }
+
+    private Frame frame(int from, int to) {
+        if (outbox[from][to] == null)
+            outbox[from][to] = new Frame();
+
+        return outbox[from][to];
+    }
+
+    /** the frames filled by [machine] leave, one per link */
+    private void flush(int machine) {
+        final Frame[] links = outbox[machine];
+
+        for (int to = 0; to < machines; ++to) {
+            final Frame frame = links[to];
+
+            if (frame == null)
+                continue;
+
+            links[to] = null;
+            frames.increment();
+
+            final int receiver = to;
+            final long delay = (machine == to) ? 0
+                    : Math.max(0, transport.delay(machine, to, ThreadLocalRandom.current()));
+
+            loops.schedule(to, delay, () -> deliver(receiver, frame));
+        }
+    }
+
+    /** unpacks a [frame] on the machine [to]: each envelope goes to the node of its group */
+    private void deliver(int to, @NotNull Frame frame) {
+        for (int i = 0; i < frame.size; ++i) {
+            final int group = frame.groups[i];
+
+            if (group == MACHINE)
+                detectors[to].merge(frame.envelopes.get(i).get(0).getHeartbeats(), System.currentTimeMillis());
+            else
+                groups[group].receive(to, frame.envelopes.get(i));
+        }
+
+        flush(to);  // the answers of the decided nodes
+    }
+
+    /** the envelopes from a machine to another, each tagged with its group */
+    private static class Frame {
+        int[] groups = new int[4];
+        final List<List<Message>> envelopes = new ArrayList<>(4);
+        int size;
+
+        void add(int group, @NotNull List<Message> envelope) {
+            if (size == groups.length) {
+                final int[] larger = new int[size * 2];
+                System.arraycopy(groups, 0, larger, 0, size);
+                groups = larger;
+            }
+
+            groups[size++] = group;
+            envelopes.add(envelope);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Results
+    // -----------------------------------------------------------------------------------------------------------------
+
+    public int size() {
+        return groups.length;
+    }
+
+    public Channel getGroup(int group) {
+        return groups[group];
+    }
+
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /** decisions (the groups that reached an agreement) per second */
+    public double decisionsPerSecond() {
+        return (elapsed == 0) ? 0 : agreements * 1000.0 / elapsed;
+    }
+
+    /** decided commands (the skipped instances excluded) per second */
+    public double commandsPerSecond() {
+        return (elapsed == 0) ? 0 : commands * 1000.0 / elapsed;
+    }
+
+    public long getSkips() {
+        return skips.sum();
+    }
+
+    /** messages sent and received by the given [machine], to and from the others */
+    public long load(int machine) {
+        return sent.get(machine) + received.get(machine);
+    }
+
+    /** the load of the busiest machine, over the average one */
+    public double loadImbalance() {
+        long max = 0, total = 0;
+
+        for (int machine = 0; machine < machines; ++machine) {
+            max = Math.max(max, load(machine));
+            total += load(machine);
+        }
+
+        return (total == 0) ? 0 : max * machines / (double) total;
+    }
+
+    public void print() {
+        System.out.println(this);
+    }
+
+    @Override
+    public String toString() {
+        final long frameCount = Math.max(1, frames.sum());
+
+        return "\nCluster [\n\t" +
+                "> Groups: " + groups.length + " x " + machines + " nodes, on " + loops.size() + " event loops\n\t" +
+                "> Decisions:\n\t\t" +
+                "- time elapsed: " + elapsed + "ms\n\t\t" +
+                "- decisions per second: " + String.format(Locale.ROOT, "%.1f", decisionsPerSecond()) + "\n\t\t" +
+                "- agreements: " + agreements + " of " + groups.length + "\n\t\t" +
+                "- leaders: " + (multiLeader ? "rotating, " + commands + " commands, " + skips.sum() + " skipped" :
+                "single (machine 0)") + "\n\t" +
+                "> Transport:\n\t\t" +
+                "- messages: " + messages + " (" +
+                String.format(Locale.ROOT, "%.1f", messages / (double) groups.length) + " per group)\n\t\t" +
+                "- envelopes: " + envelopes.sum() + " in " + frames.sum() + " frames (" +
+                String.format(Locale.ROOT, "%.1f", envelopes.sum() / (double) frameCount) + " per frame)\n\t\t" +
+                "- heartbeats: " + heartbeats.sum() + "\n\t\t" +
+                "- load (messages sent and received by each machine): " + loads() + ", imbalance: " +
+                String.format(Locale.ROOT, "%.2f", loadImbalance()) + "\n\t" +
+                "> Scheduler:\n\t\t" +
+                "- machine ticks: " + ticks.sum() + "\n\t\t" +
+                "- loop utilisation: " + String.format(Locale.ROOT, "%.1f%%", utilisation * 100) + "\n" +
+                "]";
+    }
+
+    private String loads() {
+        final long[] loads = new long[machines];
+
+        for (int machine = 0; machine < machines; ++machine)
+            loads[machine] = load(machine);
+
+        return Arrays.toString(loads);
+    }
+
+    private static int[][] repeat(int groups, @NotNull int[] values) {
+        final int[][] rows = new int[Math.max(0, groups)][];
+        Arrays.fill(rows, values);
+        return rows;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [groups...]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        final int[] sizes = (args.length > 1) ? new int[args.length - 1] : new int[] {1, 10, 100, 1000, 10000};
+
+        for (int i = 1; i < args.length; ++i)
+            sizes[i - 1] = Integer.parseInt(args[i]);
+
+        final StringBuilder table = new StringBuilder("\n> Scenario: " + scenario.getName() + "\n")
+                .append(String.format(Locale.ROOT, "%10s %12s %16s %18s\n",
+                        "groups", "time (ms)", "decisions/s", "envelopes/frame"));
+
+        for (int groups: sizes) {
+            scenario.apply();
+            Debug.EXECUTIONS_LOG = false;  // a single log for thousands of groups would only grow
+
+            final Cluster cluster = new Cluster(groups, scenario.getValues())
+                    .launch()
+                    .awaitTermination();
+
+            cluster.print();
+            Debug.clearExecutionsLog();
+
+            table.append(String.format(Locale.ROOT, "%10d %12d %16.1f %18.1f\n", groups, cluster.elapsed,
+                    cluster.decisionsPerSecond(), cluster.envelopes.sum() / (double) Math.max(1, cluster.frames.sum())));
+        }
+
+        System.out.println(table);
+    }
+}
@@ -1,5 +1,14 @@
 package com.luca.anzalone;
 
+import com.luca.anzalone.network.DedupWindow;
+import com.luca.anzalone.network.Dissemination;
+import com.luca.anzalone.network.FailureDetector;
+import com.luca.anzalone.network.RttEstimator;
+import com.luca.anzalone.profiling.MessageReceiveEvent;
+import com.luca.anzalone.profiling.PhaseEvent;
+import com.luca.anzalone.profiling.StateTransitionEvent;
+import com.luca.anzalone.runtime.Mailbox;
+import com.luca.anzalone.safety.SafetyViolation;
 import com.luca.anzalone.utils.Debug;
 import com.luca.anzalone.utils.Globals;
 import com.luca.anzalone.utils.Message;
@@ -7,7 +16,6 @@ import com.luca.anzalone.utils.Round;
 import com.sun.istack.internal.NotNull;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.logging.Logger;
 
@@ -23,26 +31,58 @@ import static com.luca.anzalone.Node.State.*;
  * At any computation step, the node can be subject to a breaking.
  * After a defined amount [Globals.BROKEN_TIME] of time, the node can be repaired.
  *
+ * The node is a non-blocking state machine (see [step]): by default each node is driven by its own thread ([run]),
+ * while with [Globals.EVENT_LOOPS] the nodes are hosted by a few event loops, and no thread is created for them.
+ *
+ * A learner (see [Globals.LEARNERS]) is a node that never votes: it only waits for the decision ([learnerStep]).
+ *
  * @author Luca Anzalone
  */
-public class Node extends Thread implements Runnable {
+public class Node implements Runnable {
     private int rank;                 // unique identifier
     private int value;                // initial value assigned to the node
     private int exeSpeed;             // simulated execution speed
     private State stato = candidate;  // the state of the node at any time
-    private boolean decision = false;
+    private volatile boolean decision = false;
     private final Channel channel;
     private final Logger log;
-    private final Queue<Message> messageQueue = new ConcurrentLinkedQueue<>();
+    private final Mailbox mailbox = new Mailbox(MAILBOX_CAPACITY, MAILBOX_POLICY);
+    private final DedupWindow dedup;         // drops the repeated messages ([Globals.DEDUPLICATION] only, or null)
     private final Set<Integer> nodesAlive     = new ConcurrentSkipListSet<>();  // keep track of the alive nodes
+    private final FailureDetector detector;  // used instead of [queryAlive] ([Globals.FAILURE_DETECTOR] only, or null)
+    private final boolean sharedDetector;    // the detector of the machine (see [Cluster]), fed by the machine
+    private final RttEstimator rtt;          // round-trip times of the peers ([Globals.ADAPTIVE_TIMEOUTS], [Globals.THRIFTY])
+    private final long[] quorumTimeouts = new long[2];  // (adaptive) of phase 1 and 2, as of [rttChanges]
+    private long rttChanges = -1;     // the changes of [rtt] and of the configuration the [quorumTimeouts] are for
     //-----------------------------------------------------
     private Round round;  // current round
     private Round commit;
     private Round lastRound;
     private int lastValue;
     private int proposedValue;
+    private Round proposedRound = Round.empty();  // the round in which the [proposedValue] was accepted (phase 1)
+    private Round decidedRound  = Round.empty();  // the round of the decision: its leader is the root of the spread
     private long deltaTime = 0;
     //-----------------------------------------------------
+    private int attempts = 0;         // consecutive failed attempts to lead (for the backoff)
+    private int lastLeader = -1;      // the last node from which a [collect] or [begin] has been accepted
+    private long lastLeaderTime = 0;
+    private long lastPull = 0;        // the last time the decision has been pulled from a random node
+    //-----------------------------------------------------
+    private Wait wait = Wait.none;    // what the node is waiting for, within its current phase
+    private long waitStart;
+    private long deadline;            // end of the current wait
+    private final Set<Integer> votes = new TreeSet<>();  // senders of the [last], [accept] or [preVoteGranted] waited
+    private final Set<Integer> asked = new TreeSet<>();  // voters the [collect] or [begin] of the current phase went to
+    private Message pending;          // (thrifty) the request not yet sent to every voter, see [widen]
+    private long widenAt;
+    private Round proposal;           // the round asked by the pre-vote
+    private boolean ticked;           // the current step is over
+    private boolean restored = false; // the state comes from a snapshot (see [restore])
+    private PhaseEvent phase;         // JFR event of the current state (null, unless profiled)
+    private long phaseStart;          // time-stamp (us) of the current state, in the [channel.timeline]
+    private Round phaseRound;
+    //-----------------------------------------------------
 
     /**
      * Creates a node.
@@ -52,7 +92,22 @@ public class Node extends Thread implements Runnable {
      * @param v: the value that the node try to propose
      */
     Node(@NotNull final Channel channel, int rank, int v) {
-        super("Node-" + rank);
+        this(channel, rank, v, false);
+    }
+
+    /**
+     * Creates a learner: it doesn't propose a value, nor it votes (see [learnerStep]), so it has neither a failure
+     * detector nor the round-trip times of the peers.
+     *
+     * @param channel: communication channel
+     * @param rank: unique identifier (id), after the ones of the voters
+     */
+    Node(@NotNull final Channel channel, int rank) {
+        this(channel, rank, NO_VALUE, true);
+        assert channel.isLearner(rank);
+    }
+
+    private Node(@NotNull final Channel channel, int rank, int v, boolean learner) {
         this.log = Logger.getLogger("Node [" + rank + "]");
         this.rank = rank;
 
@@ -61,50 +116,203 @@ public class Node extends Thread implements Runnable {
         this.proposedValue = v;
 
         this.round  = new Round(0, rank);
-        this.commit = this.round.copy();
-        this.lastRound = this.round.copy();
-
+        this.commit = this.round;
         this.channel  = channel;
+        this.lastRound = initialRound();
+
         this.exeSpeed = 1 + generator.nextInt(MAX_EXE_SPEED);
+        this.sharedDetector = channel.getCluster() != null;
+        this.detector = (!FAILURE_DETECTOR || learner) ? null
+                      : sharedDetector ? channel.getCluster().getDetector(rank)
+                      : new FailureDetector(rank, channel.size());
+        this.dedup    = DEDUPLICATION ? new DedupWindow(channel.totalSize()) : null;
+
+        // (multi-leader) the instance is pre-assigned: its owner leads from the start, the others just vote
+        if (sharedDetector && channel.getCluster().isMultiLeader())
+            this.stato = (rank == channel.getOwner()) ? leader : voter;
+        this.rtt = ((ADAPTIVE_TIMEOUTS || THRIFTY) && !learner) ? newRttEstimator() : null;
+
+        if (learner)
+            this.stato = State.learner;
     }
 
+    /** thread-per-node driver: steps the node, sleeping [exeSpeed] ms between two computation steps */
     @Override
     public void run() {
-        deltaTime = currentTime();  // take initial execution time
-
-        while (!decision) {
-            switch (stato) {
-                case voter:
-                    voterPhase();
-                    advance();
-                    break;
-
-                case leader:
-                    leaderPhase();
-                    break;
-
-                case broken:
-                    brokenPhase();
-                    break;
-
-                case candidate:
-                    electionPhase();
-                    break;
-            }
+        prepare();
+
+        while (step())
+            delay();
+
+        finish();
+    }
+
+    /** takes the initial execution time, before the first [step] */
+    void prepare() {
+        phase = PhaseEvent.begin(rank, stato, round);
+        beginTimeline();
+
+        if (restored)
+            return;
 
-            if (isElectionTimeoutExpired()) {
-                dlog(Debug.ELECTION_TIMEOUT, round, "[ELECTION TIMEOUT EXPIRED] " + toString());
-                logIf(Debug.ELECTION_TIMEOUT, "Election-Timeout", toString());
+        deltaTime = currentTime();
 
-                deltaTime = currentTime();
-                stato = candidate;
+        if (detector != null && !sharedDetector)
+            detector.reset(deltaTime);
+    }
+
+    /**
+     * Runs one computation step of the node, without blocking: the waits of the protocol (the leader timeouts,
+     * the backoff, the pre-vote, the query-alive and the repair) are kept as a [wait] plus its [deadline], so the
+     * same node can be driven by its own thread ([run]) or by an event loop (see [runtime.EventLoopGroup]).
+     * Returns false once the node has terminated (decision, or a halted channel).
+     */
+    boolean step() {
+        if (decision || channel.isHalted())
+            return false;
+
+        ticked = false;
+        channel.enter();  // a snapshot waits for the end of the step
+
+        try {
+            while (!ticked && !decision && !channel.isHalted()) {
+                switch (stato) {
+                    case voter:
+                        voterPhase();
+                        advance();
+                        phaseCompleted();
+                        break;
+
+                    case leader:
+                        leaderStep();
+                        break;
+
+                    case broken:
+                        brokenStep();
+                        break;
+
+                    case candidate:
+                        electionStep();
+                        break;
+
+                    case learner:
+                        learnerStep();
+                        break;
+                }
             }
+
+            channel.flush(this);  // the messages produced in this step leave together
+        } catch (SafetyViolation violation) {
+            // fail fast: the channel re-throws the violation on termination
+            channel.halt();
+            channel.flush(this);
+        } finally {
+            channel.leave();
+        }
+
+        return !decision && !channel.isHalted();
+    }
+
+    /** the current state of the node (called by the channel, while no node is stepping) */
+    Snapshot.NodeState capture() {
+        final FailureDetector detectorCopy = (detector != null) ? new FailureDetector(rank, channel.size()) : null;
+        final DedupWindow dedupCopy = (dedup != null) ? new DedupWindow(channel.totalSize()) : null;
+        final RttEstimator rttCopy = (rtt != null) ? newRttEstimator() : null;
+
+        if (detectorCopy != null)
+            detectorCopy.restore(detector, 0);
+
+        if (dedupCopy != null)
+            dedupCopy.restore(dedup);
+
+        if (rttCopy != null)
+            rttCopy.restore(rtt, 0);
+
+        return new Snapshot.NodeState(rank, value, exeSpeed, stato, decision,
+                decidedRound, round, commit, lastRound, lastValue, proposedValue, proposedRound, deltaTime,
+                attempts, lastLeader, lastLeaderTime, lastPull,
+                wait, waitStart, deadline, new TreeSet<>(votes), new TreeSet<>(asked), pending, widenAt, proposal,
+                new TreeSet<>(nodesAlive), mailbox.messages(), detectorCopy, dedupCopy, rttCopy);
+    }
+
+    /** takes the given [state], moving its times forward by [shift] ms (the time elapsed since the snapshot) */
+    void restore(@NotNull Snapshot.NodeState state, long shift) {
+        assert state.rank == rank;
+
+        value    = state.value;
+        exeSpeed = state.exeSpeed;
+        stato    = state.state;
+        decision = state.decision;
+        decidedRound = state.decidedRound;
+        round    = state.round;
+        commit   = state.commit;
+        lastRound = state.lastRound;
+        lastValue = state.lastValue;
+        proposedValue = state.proposedValue;
+        proposedRound = state.proposedRound;
+        deltaTime = state.deltaTime + shift;
+        attempts   = state.attempts;
+        lastLeader = state.lastLeader;
+        lastLeaderTime = state.lastLeaderTime + shift;
+        lastPull = state.lastPull + shift;
+        wait      = state.wait;
+        waitStart = state.waitStart + shift;
+        deadline  = state.deadline + shift;
+        proposal  = state.proposal;
+        pending   = state.pending;
+        widenAt   = state.widenAt + shift;
+        votes.addAll(state.votes);
+        asked.addAll(state.asked);
+        nodesAlive.addAll(state.nodesAlive);
+        if (detector != null && state.detector != null)
+            detector.restore(state.detector, shift);
+
+        if (dedup != null && state.dedup != null)
+            dedup.restore(state.dedup);
+
+        if (rtt != null && state.rtt != null)
+            rtt.restore(state.rtt, shift);
+
+        for (Message msg: state.mailbox)
+            mailbox.add(msg);
+
+        restored = true;
+    }
+
+    /** called once the node has terminated */
+    void finish() {
+        channel.flush(this);
+
+        if (phase != null) {
+            phase.end(round, decision);
+            phase = null;
+        }
+
+        if (channel.timeline != null) {
+            endTimeline();
+
+            if (decision)
+                channel.timeline.instant(rank, "decided " + value);
         }
 
-        logIf(Debug.NODE_STATE, toString());
+        logIf(Debug.NODE_STATE, "%s", this);
         dlog(Debug.NODE_STATE, round, "State {%s}", this);
     }
 
+    /** the end of a phase (or of an attempt to lead) ends the step, and checks the election timeout */
+    private void phaseCompleted() {
+        wait = Wait.none;
+        ticked = true;
+
+        if (isElectionTimeoutExpired()) {
+            dlog(Debug.ELECTION_TIMEOUT, round, "[ELECTION TIMEOUT EXPIRED] %s", this);
+            logIf(Debug.ELECTION_TIMEOUT, "Election-Timeout %s", this);
+
+            deltaTime = currentTime();
+            become(candidate);
+        }
+    }
+
 
     /***
      * The voter phase is divided into 2 more phases:
@@ -119,13 +327,14 @@ public class Node extends Thread implements Runnable {
 
             if (r.greaterEqual(commit)) {
                 channel.send(this, sender,
-                        new Message(last, r.copy(), lastRound.copy(), lastValue)
+                        new Message(last, rank, r, lastRound, lastValue)
                 );
 
-                commit = r.copy();
+                commit = r;
                 channel.summary.updateRound(commit);
+                leaderContact(sender);
             } else {
-                channel.send(this, sender, new Message(oldRound, r.copy(), commit.copy()));
+                channel.send(this, sender, new Message(oldRound, rank, r, commit));
                 dlog(Debug.LOG_OLDROUND, round, "[OLD-ROUND in collect] %s", msg);
             }
         });
@@ -137,16 +346,35 @@ public class Node extends Thread implements Runnable {
             final int sender = msg.getSender();
 
             if (r.greaterEqual(commit)) {
-                channel.send(this, sender, new Message(accept, round));
+                channel.send(this, sender, new Message(accept, rank, r));
                 channel.summary.updateRound(r);
 
-                lastRound = r.copy();
+                lastRound = r;
                 lastValue = v;
+                leaderContact(sender);
             } else {
-                channel.send(this, sender, new Message(oldRound, r.copy(), commit.copy()));
+                channel.send(this, sender, new Message(oldRound, rank, r, commit));
                 dlog(Debug.LOG_OLDROUND, round, "[OLD-ROUND in begin] %s", msg);
             }
         });
+
+        // consuming pre-vote messages: the vote is granted only if the proposed round could be accepted,
+        // and no other leader has been heard in the last [Globals.TIMEOUT] ms
+        filterMessages(preVote).forEach(msg -> {
+            final Round r = msg.getR1();
+            final int sender = msg.getSender();
+            final boolean otherLeader = lastLeader != sender && currentTime() - lastLeaderTime < TIMEOUT;
+
+            if (r.greaterEqual(commit) && !otherLeader)
+                channel.send(this, sender, new Message(preVoteGranted, rank, r));
+        });
+    }
+
+    private void leaderContact(int sender) {
+        if (sender != rank) {
+            lastLeader = sender;
+            lastLeaderTime = currentTime();
+        }
     }
 
 
@@ -157,102 +385,336 @@ public class Node extends Thread implements Runnable {
      *
      * The reception of [old-round] messages cause the current leader to lost its "leading" and became a voter.
      * The leader is, at the same time, a voter. Thus, the [collect] and [begin] messages are sent to itself.
+     *
+     * To avoid dueling leaders, a node that has already failed to lead waits a randomized exponential backoff,
+     * and (when [Globals.PRE_VOTE] is set) checks that it could win before increasing its round.
      */
-    private void leaderPhase() {
+    private void leaderStep() {
+        switch (wait) {
+            case none:
+                if (canSkip())
+                    skip();
+                else if (BACKOFF > 0 && attempts > 0)
+                    startBackoff();
+                else if (PRE_VOTE)
+                    startPreVote();
+                else
+                    startCollect();
+                break;
+
+            case backoff:
+                backoffStep();
+                break;
+
+            case preVote:
+                preVoteStep();
+                break;
+
+            case last:
+                lastStep();
+                break;
+
+            case accept:
+                acceptStep();
+                break;
+
+            default:
+                throw new IllegalStateException("unexpected wait for a leader: " + wait);
+        }
+    }
+
+    // -- phase 1
+    // -------------------------------------------------
+    private void startCollect() {
+        attempts++;  // so that a further attempt waits the backoff
         round = nextRound();
         channel.summary.updateRound(round);
 
-        // -- phase 1
-        // -------------------------------------------------
-        channel.broadcast(this, new Message(collect, round), true);
+        // the own accepted value counts, even if the own [last] is not in the quorum
+        proposedRound = lastRound;
+        proposedValue = lastValue;
+
+        // wait a quorum of last messages
+        startPhase(new Message(collect, rank, round), Wait.last);
         dlog(round, "[Leader-%d] collect", rank);
+    }
 
-        // wait a majority of last messages
-        long last_timeout = currentTime() + TIMEOUT;
-        final Set<Integer> lastCount = new TreeSet<>();
-        boolean last_majority = false;
+    private void lastStep() {
+        if (currentTime() >= deadline) {
+            // no last-majority, so start another round
+            logIf(Debug.LOG_TIMEOUT, "TIMEOUT EXPIRED: No [last] majority");
+            dlog(Debug.LOG_TIMEOUT, round, "[Leader-%d] TIMEOUT EXPIRED: No [last] majority", rank);
+            expired();
+            phaseCompleted();
+            return;
+        }
 
-        while (currentTime() < last_timeout) {
-            voterPhase();
+        if (pending != null && currentTime() >= widenAt)
+            widen();
 
-            if (filterMessages(oldRound).size() > 0) {
-                logIf(Debug.LOG_OLDROUND, "Received: old-round in collect");
-                dlog(round, "[Leader-%d] received 'old_round' in collect", rank);
-                stato = voter;
-                return;  // lascia il passo
-            }
+        voterPhase();
 
-            final List<Message> lastMessages = filterMessages(last);
-            lastCount.addAll(Message.uniqueSenders(lastMessages));
+        if (filterMessages(oldRound).size() > 0) {
+            logIf(Debug.LOG_OLDROUND, "Received: old-round in collect");
+            dlog(round, "[Leader-%d] received 'old_round' in collect", rank);
+            become(voter);
+            phaseCompleted();
+            return;  // lascia il passo
+        }
 
-            // cosider the value of [v] associated to the biggest [round]
-            for (Message msg: lastMessages) {
-                final Round r = msg.getR1();
+        // the answers to the collect of an older round are late: they don't count
+        final List<Message> lastMessages = ofRound(filterMessages(last));
+        votes.addAll(Message.uniqueSenders(lastMessages));
 
-                if (r.greaterEqual(lastRound)) {
-                    lastRound = r.copy();
-                    proposedValue = msg.getValue();
-                }
-            }
+        // consider the value [v] accepted in the biggest round
+        for (Message msg: lastMessages) {
+            final Round r = msg.getR2();
 
-            if (majority(lastCount.size())) {
-                last_majority = true;
-                break;
+            if (r.greaterEqual(proposedRound)) {
+                proposedRound = r;
+                proposedValue = msg.getValue();
             }
-
-            if (advance() == Status.changed)
-                return;
         }
 
-        if (!last_majority) {
-            // no last-majority, so start another round
-            logIf(Debug.LOG_TIMEOUT, "TIMEOUT EXPIRED: No [last] majority");
-            dlog(Debug.LOG_TIMEOUT, round, "[Leader-%d] TIMEOUT EXPIRED: No [last] majority", rank);
+        if (channel.isQuorum(votes, true)) {
+            channel.summary.phase1Completed(currentTime() - waitStart);
+            startBegin();
             return;
         }
 
-        // -- phase 2
-        // -------------------------------------------------
-        channel.broadcast(this, new Message(begin, round, proposedValue), true);
+        if (advance() == Status.changed)
+            phaseCompleted();
+    }
+
+    // -- phase 2
+    // -------------------------------------------------
+    private void startBegin() {
+        // wait a quorum of accept messages
+        startPhase(new Message(begin, rank, round, proposedValue), Wait.accept);
         dlog(round, "[Leader-%d] begin", rank);
+    }
 
-        // wait a majority of accept messages
-        long accept_timeout = currentTime() + TIMEOUT;
-        final Set<Integer> acceptCount = new TreeSet<>();
+    private void acceptStep() {
+        if (currentTime() >= deadline) {
+            logIf(Debug.LOG_TIMEOUT, String.format("15%d %s", currentTime(), round),
+                    "TIMEOUT EXPIRED: No [accept] majority");
+            dlog(Debug.LOG_TIMEOUT, round,
+                    "[Leader-%d] TIMEOUT EXPIRED: No [accept] majority", rank);
+            expired();
+            phaseCompleted();
+            return;
+        }
 
-        while (currentTime() < accept_timeout) {
-            voterPhase();
+        if (pending != null && currentTime() >= widenAt)
+            widen();
 
-            if (filterMessages(oldRound).size() > 0) {
-                logIf(Debug.LOG_OLDROUND, "Received: old-round in begin");
-                dlog(round, "[Leader-%d] received 'old_round' in begin", rank);
-                stato = voter;
-                return;  // lascia il passo
-            }
+        voterPhase();
 
-            final List<Message> acceptMessages = filterMessages(accept);
-            acceptCount.addAll(Message.uniqueSenders(acceptMessages));
-
-            if (majority(acceptCount.size())) {
-                // there's a decision!
-                decision = true;
-                value = proposedValue;
-                channel.summary.decidedValue(rank, value);
-                channel.broadcast(this, new Message(success, value));
-                dlog(round, "[Leader-%d] 'success' => %d", rank, value);
-                return;  // terminate
-            }
+        if (filterMessages(oldRound).size() > 0) {
+            logIf(Debug.LOG_OLDROUND, "Received: old-round in begin");
+            dlog(round, "[Leader-%d] received 'old_round' in begin", rank);
+            become(voter);
+            phaseCompleted();
+            return;  // lascia il passo
+        }
 
-            if (advance() == Status.changed)
-                return;
+        votes.addAll(Message.uniqueSenders(ofRound(filterMessages(accept))));
+
+        if (channel.isQuorum(votes, false)) {
+            // there's a decision!
+            channel.summary.phase2Completed(currentTime() - waitStart);
+            learn(proposedValue, round);
+            channel.summary.decidedBy(rank);
+            spread();
+            dlog(round, "[Leader-%d] 'success' => %d", rank, value);
+            phaseCompleted();
+            return;  // terminate
+        }
+
+        if (advance() == Status.changed)
+            phaseCompleted();
+    }
+
+
+    /**
+     * Sends the [request] of a phase (collect or begin), then waits its quorum ([event]): the request goes to every
+     * voter or, with [Globals.THRIFTY], to the fastest known voters that form a quorum only. If they don't answer
+     * within their own timeout (at most half of the remaining wait), the request goes to more voters ([widen]).
+     */
+    private void startPhase(@NotNull Message request, @NotNull Wait event) {
+        final boolean phase1 = event == Wait.last;
+        final Set<Integer> quorum = THRIFTY ? fastestQuorum(phase1) : null;
+
+        if (quorum != null)
+            channel.multicast(this, request, quorum);
+        else
+            channel.broadcast(this, request, true);
+
+        requested(request.getType(), round);
+        waitFor(event, quorumTimeout(phase1));
+        asked.clear();
+        pending = null;
+
+        if (quorum == null) {
+            for (int id = 0; id < channel.size(); ++id)
+                asked.add(id);
+            return;
+        }
+
+        asked.addAll(quorum);
+        pending = request;
+        widenAfter(quorum);
+        channel.summary.thriftyPhase(false);
+    }
+
+    /**
+     * (thrifty) The node itself and the known voters with the lowest timeouts, until they form a quorum
+     * (the unmeasured ones by rank). Null if every voter is needed, or if the known ones are not enough.
+     */
+    private Set<Integer> fastestQuorum(boolean phase1) {
+        final Set<Integer> quorum = new TreeSet<>();
+        quorum.add(rank);
+        quorum.addAll(fastest(quorum, nodesAlive, phase1));
+
+        return (isQuorum(quorum, phase1) && quorum.size() < channel.size()) ? quorum : null;
+    }
+
+    /** (thrifty) the fewest [candidates] (the fastest first) that, added to [voters], form a quorum, or all of them */
+    private List<Integer> fastest(@NotNull Set<Integer> voters, @NotNull Collection<Integer> candidates, boolean phase1) {
+        final List<Integer> peers = new ArrayList<>(candidates);
+        peers.removeAll(voters);
+        peers.sort(Comparator.comparingLong(rtt::timeout));
+
+        final Set<Integer> quorum = new TreeSet<>(voters);
+
+        for (int i = 0; i < peers.size(); ++i) {
+            if (isQuorum(quorum, phase1))
+                return new ArrayList<>(peers.subList(0, i));
+
+            quorum.add(peers.get(i));
+        }
+
+        return peers;
+    }
+
+    private boolean isQuorum(@NotNull Set<Integer> voters, boolean phase1) {
+        return channel.isQuorum(voters, phase1);
+    }
+
+    /** (thrifty) the voters asked (from [waitStart]) haven't all answered within their timeout, at most [wait] ms */
+    private void widenAfter(@NotNull Collection<Integer> peers) {
+        long timeout = MIN_TIMEOUT;
+
+        for (int peer: peers) {
+            if (peer != rank)
+                timeout = Math.max(timeout, rtt.timeout(peer));
+        }
+
+        widenAt = currentTime() + Math.min(timeout, (deadline - currentTime()) / 2);
+    }
+
+    /**
+     * (thrifty) The asked voters didn't answer in time: the pending request goes to the fastest voters not yet asked
+     * that, with the ones that have answered, form a quorum (all the others, when they are not enough).
+     */
+    private void widen() {
+        final boolean phase1 = wait == Wait.last;
+        final Set<Integer> answered = new TreeSet<>(votes);
+        final Set<Integer> others = new TreeSet<>();
+        answered.add(rank);
+
+        for (int id = 0; id < channel.size(); ++id) {
+            if (!asked.contains(id))
+                others.add(id);
         }
 
-        logIf(Debug.LOG_TIMEOUT, String.format("15%d %s", currentTime(), round),
-                "TIMEOUT EXPIRED: No [accept] majority");
-        dlog(Debug.LOG_TIMEOUT, round,
-                "[Leader-%d] TIMEOUT EXPIRED: No [accept] majority", rank);
+        List<Integer> next = fastest(answered, others, phase1);
+        answered.addAll(next);
+
+        if (!isQuorum(answered, phase1))
+            next = new ArrayList<>(others);  // the known voters are not enough: every one is asked
+
+        channel.multicast(this, pending, next);
+        asked.addAll(next);
+        channel.summary.thriftyPhase(true);
+        dlog(round, "[Leader-%d] widens %s to %s", rank, wait, next);
+
+        if (asked.size() == channel.size())
+            pending = null;
+        else
+            widenAfter(next);
+    }
+
+    /**
+     * Randomized exponential backoff: before trying again to lead, the node waits (as a voter)
+     * a random time in [0, BACKOFF * 2^(attempts - 1)] ms. If, meanwhile, a higher round is
+     * committed, another leader is working and the node became a voter.
+     */
+    private void startBackoff() {
+        final int ceiling = BACKOFF << Math.min(attempts - 1, MAX_BACKOFF_EXPONENT);
+        channel.summary.backoffs++;
+        waitFor(Wait.backoff, generator.nextInt(1 + ceiling));
     }
 
+    private void backoffStep() {
+        if (currentTime() >= deadline) {
+            if (PRE_VOTE)
+                startPreVote();
+            else
+                startCollect();
+            return;
+        }
+
+        voterPhase();
+
+        if (commit.compareTo(round) > 0) {
+            dlog(round, "[Leader-%d] steps down, found %s during backoff", rank, commit);
+            become(voter);
+            phaseCompleted();
+            return;
+        }
+
+        if (advance() == Status.changed)
+            phaseCompleted();
+    }
+
+    /**
+     * Pre-vote: the would-be leader asks if a (phase 1) quorum would follow it in the next round,
+     * without increasing its own round. The round is increased (phase 1) only if the vote has been granted.
+     */
+    private void startPreVote() {
+        proposal = nextRound();
+
+        channel.broadcast(this, new Message(preVote, rank, proposal), true);
+        dlog(round, "[Leader-%d] pre-vote for %s", rank, proposal);
+
+        waitFor(Wait.preVote, TIMEOUT);
+    }
+
+    private void preVoteStep() {
+        if (currentTime() >= deadline) {
+            dlog(round, "[Leader-%d] pre-vote lost", rank);
+            channel.summary.preVotesLost++;
+            attempts++;
+            phaseCompleted();
+            return;
+        }
+
+        voterPhase();
+
+        for (Message msg: filterMessages(preVoteGranted)) {
+            if (proposal.equals(msg.getR1()))
+                votes.add(msg.getSender());
+        }
+
+        if (channel.isQuorum(votes, true)) {
+            startCollect();
+            return;
+        }
+
+        if (advance() == Status.changed)
+            phaseCompleted();
+    }
 
     /**
      * The Election phase:
@@ -260,34 +722,116 @@ public class Node extends Thread implements Runnable {
      * The leader became the node with the lowest rank (according to the known nodes by each of them).
      *
      * Is possible, due to a lost of messages, that one or more nodes became leader.
+     * When [Globals.FAILURE_DETECTOR] is enabled, the known nodes are the ones trusted by the heartbeat
+     * failure detector (kept up to date by [advance]), so no [query-alive] is sent and there's no wait.
      */
-    private void electionPhase() {
-        long timeout = currentTime() + TIMEOUT;
+    private void electionStep() {
+        if (wait == Wait.alive) {
+            queryAliveStep();
+            return;
+        }
 
-        nodesAlive.clear();
-        nodesAlive.add(rank);
-        dlog(round, "[Candidate-%d] starts election", rank);
+        if (canSkip()) {
+            skip();
+            return;
+        }
 
-        // try to know the other nodes
-        channel.broadcast(this, new Message(queryAlive), true);
-        int minRank = rank;
+        channel.summary.elections++;
+        dlog(round, "[Candidate-%d] starts election", rank);
 
-        while (currentTime() < timeout) {
-            filterMessages(alive);  // just consume alive messages (the rank is taken while receiving them)
+        if (FAILURE_DETECTOR) {
+            updateAliveNodes(currentTime());
+            elect();
+        } else
+            startQueryAlive();
+    }
 
-            if (advance() == Status.changed)
-                return;
-        }
+    /**
+     * Elects the known member with the lowest rank (counted from the owner of the group, see [Cluster]): a node out
+     * of the configuration of the channel (see [Channel.members]) never leads.
+     */
+    private void elect() {
+        int minRank = channel.isMember(rank) ? rank : -1;
 
         // find the lowest known rank
         for (Integer id: nodesAlive) {
-            if (id < minRank)
+            if (channel.isMember(id) && (minRank < 0 || priority(id) < priority(minRank)))
                 minRank = id;
         }
 
-        // elect the known node with the lowest rank
-        stato = (rank == minRank) ? leader : voter;
+        // the broken nodes not known are detected now
+        if (!FAILURE_DETECTOR) {
+            final long now = currentTime();
+
+            for (int id = 0; id < channel.size(); ++id) {
+                if (!nodesAlive.contains(id) && channel.isMember(id))
+                    channel.summary.failureDetected(id, now);
+            }
+        }
+
+        // an adaptive election timeout counts from the end of the election: the first wait (before any RTT sample)
+        // can be longer than the timeout learnt from its answers
+        if (ADAPTIVE_TIMEOUTS)
+            deltaTime = currentTime();
+
+        become((rank == minRank) ? leader : voter);
         dlog(round, "ELECTION TERMINATED {%s}", this);
+        phaseCompleted();
+    }
+
+    /**
+     * The round of the initial value, as if accepted before any other: none for the no-op proposed in the instance
+     * of another node (multi-leader), so that a leader never prefers it to the command of the owner.
+     */
+    private Round initialRound() {
+        return (value == Cluster.NOOP && rank != channel.getOwner()) ? Round.empty() : round;
+    }
+
+    /** the position of the node [id] in the order of the elections: the owner first, then the next ranks */
+    private int priority(int id) {
+        return Math.floorMod(id - channel.getOwner(), channel.size());
+    }
+
+    /**
+     * (multi-leader) The owner of the group has nothing to propose: as in Mencius, the other nodes may only propose
+     * the no-op in the instance of another node (see [Cluster]), so no other value can be decided.
+     */
+    private boolean canSkip() {
+        return rank == channel.getOwner() && proposedValue == Cluster.NOOP
+                && channel.getCluster() != null && channel.getCluster().isMultiLeader();
+    }
+
+    /** (multi-leader) the idle owner skips its instance: the no-op is decided at once, and spread as a [success] */
+    private void skip() {
+        learn(Cluster.NOOP, round);
+        channel.summary.decidedBy(rank);
+        channel.getCluster().skipped();
+        spread();
+        dlog(round, "[Node-%d] skips its instance", rank);
+        phaseCompleted();
+    }
+
+    /** try to know the other nodes, by waiting [alive] messages for [Globals.TIMEOUT] ms */
+    private void startQueryAlive() {
+        nodesAlive.clear();
+        nodesAlive.add(rank);
+
+        channel.broadcast(this, new Message(queryAlive, rank), true);
+        requested(queryAlive, Round.empty());
+        // (adaptive) the slowest peer is waited too: missing the lowest rank would elect a second leader
+        waitFor(Wait.alive, ADAPTIVE_TIMEOUTS ? rtt.timeout(rank, peers -> peers.size() == channel.size()) : TIMEOUT);
+    }
+
+    private void queryAliveStep() {
+        if (currentTime() >= deadline) {
+            elect();
+            return;
+        }
+
+        filterMessages(alive);  // just consume alive messages (the rank is taken while receiving them)
+
+        if (advance() == Status.changed)
+            phaseCompleted();
     }
 
     /**
@@ -296,55 +840,256 @@ public class Node extends Thread implements Runnable {
      * If so, the state of the node (state, known nodes, rounds and last-values) are restore.
      * The repaired node starts again from being a candidate.
      */
-    private void brokenPhase() {
-        long broken_wait = currentTime() + BROKEN_TIME;
+    private void brokenStep() {
+        if (wait == Wait.none) {
+            waitFor(Wait.repair, BROKEN_TIME);
+            return;
+        }
 
-        while (currentTime() < broken_wait)
-            delay();
+        if (currentTime() < deadline) {
+            ticked = true;  // just wait
+            return;
+        }
 
-        messageQueue.clear();
+        mailbox.clear();
         nodesAlive.clear();
-        stato = candidate;
+
+        if (dedup != null)
+            dedup.reset();
+
+        if (detector != null && !sharedDetector)
+            detector.reset(currentTime());
+
+        if (rtt != null)
+            rtt.reset();
+
+        channel.summary.nodeRepaired(rank);
+        channel.safety.repaired(rank);
+        become(candidate);
 
         dlog(Debug.NODE_REPAIRED, round, "REPAIRED [Node-%d]", rank);
         logIf(Debug.NODE_REPAIRED, "REPAIRED [Node-%d]", rank);
 
         // TODO: cambiare il valore proposto con uno di default?
         // node memory reset
+        attempts   = 0;
+        lastLeader = -1;
         lastValue     = value;
         proposedValue = value;
         round  = new Round(0, rank);
-        commit = round.copy();
-        lastRound = round.copy();
+        commit = round;
+        lastRound = initialRound();
+        phaseCompleted();
+    }
+
+    /**
+     * The Learner phase:
+     * the node only waits for the [success] of the voters. Without news for [Globals.TIMEOUT] ms, it asks a random
+     * voter with a [queryAlive]: a voter that has decided answers with the success, the others with [alive].
+     * A learner never breaks, and never answers until it has decided: the voters don't know it, and the other
+     * messages (the [alive] answers, the [queryAlive] of the pulling nodes, the duplicates) are dropped.
+     */
+    private void learnerStep() {
+        ticked = true;
+
+        final List<Message> successMessages = filterMessages(success);
+        mailbox.clear();
+
+        if (!successMessages.isEmpty()) {
+            learn(successMessages.get(0).getValue(), successMessages.get(0).getR1());
+
+            // the learners are nodes of the tree, and gossip peers, but they don't flood
+            if (DISSEMINATION != Dissemination.flood)
+                spread();
+
+            return;
+        }
+
+        if (wait == Wait.none) {
+            waitFor(Wait.alive, Math.max(1, TIMEOUT));
+        } else if (currentTime() >= deadline) {
+            channel.send(this, generator.nextInt(channel.size()), new Message(queryAlive, rank));
+            waitFor(Wait.alive, Math.max(1, TIMEOUT));
+        }
+    }
+
+    /** changes the state of the node: a (profiled) phase ends, and the next one begins */
+    private void become(@NotNull State next) {
+        if (next == stato)
+            return;
+
+        StateTransitionEvent.emit(rank, stato, next, round, commit);
+
+        if (phase != null)
+            phase.end(round, decision);
+
+        endTimeline();
+        stato = next;
+        phase = PhaseEvent.begin(rank, next, round);
+        beginTimeline();
+    }
+
+    private void beginTimeline() {
+        if (channel.timeline != null) {
+            phaseStart = channel.timeline.now();
+            phaseRound = round;
+        }
+    }
+
+    /** the current state becomes a span of the track of the node */
+    private void endTimeline() {
+        if (channel.timeline != null)
+            channel.timeline.phase(rank, stato.name(), phaseStart, phaseRound.toString(), round.toString());
+    }
+
+    /**
+     * The wait for a phase-1 (or phase-2) quorum: [Globals.TIMEOUT], or, with [Globals.ADAPTIVE_TIMEOUTS],
+     * the timeout of the fastest peers forming a quorum (see [RttEstimator]).
+     */
+    private long quorumTimeout(boolean phase1) {
+        if (!ADAPTIVE_TIMEOUTS)
+            return TIMEOUT;
+
+        final long timeout = rttTimeout(phase1);
+        channel.summary.quorumWait(timeout);
+        return timeout;
+    }
+
+    /**
+     * Every node is assumed known here ([nodesAlive] is rebuilt by each election). The timeouts are computed again
+     * only when an estimate (or the configuration) has changed: the election timeout is checked at each step.
+     */
+    private long rttTimeout(boolean phase1) {
+        final long changes = rtt.getChanges() + channel.getReconfigurations();
+
+        if (changes != rttChanges) {
+            quorumTimeouts[0] = rtt.timeout(rank, voters -> channel.isQuorum(voters, true));
+            quorumTimeouts[1] = rtt.timeout(rank, voters -> channel.isQuorum(voters, false));
+            rttChanges = changes;
+        }
+
+        return quorumTimeouts[phase1 ? 0 : 1];
+    }
+
+    /** (adaptive) a broadcast request, whose responses will be RTT samples */
+    private void requested(@NotNull Message.Type request, @NotNull Round r) {
+        if (ADAPTIVE_TIMEOUTS || THRIFTY)
+            rtt.requested(requestKey(request, r), currentTime());
+    }
+
+    /**
+     * The key of a request in the [rtt] estimator, the same for the request and for its responses: its type and
+     * its round ([queryAlive] has none, and [alive] doesn't carry it: both use the empty round).
+     */
+    private static List<Object> requestKey(@NotNull Message.Type request, @NotNull Round r) {
+        return Arrays.asList(request, (request == queryAlive) ? Round.empty() : r);
+    }
+
+    /**
+     * (adaptive) a response is matched, on receipt, with the request it answers: the late responses (to the rounds
+     * already given up) are samples too, otherwise only the peers faster than the timeout would be measured
+     */
+    private void sample(@NotNull Message msg) {
+        final Message.Type request;
+
+        switch (msg.getType()) {
+            case last:   request = collect; break;
+            case accept: request = begin; break;
+            case alive:  request = queryAlive; break;
+            default: return;
+        }
+
+        if (msg.getSender() != rank)
+            rtt.responded(msg.getSender(), requestKey(request, msg.getR1()), currentTime());
+    }
+
+    /** the [messages] that answer a request of the current [round] */
+    private List<Message> ofRound(@NotNull List<Message> messages) {
+        messages.removeIf(msg -> !round.equals(msg.getR1()));
+        return messages;
+    }
+
+    /** a quorum wait expired: the timeout of each peer asked that didn't answer backs off */
+    private void expired() {
+        if (!ADAPTIVE_TIMEOUTS && !THRIFTY)
+            return;
+
+        for (int peer: asked) {
+            if (peer != rank && !votes.contains(peer))
+                rtt.expired(peer);
+        }
+    }
+
+    /** starts waiting (at most [millis] ms) for the given event, collecting the [votes] from scratch */
+    private void waitFor(@NotNull Wait event, long millis) {
+        wait = event;
+        waitStart = currentTime();
+        deadline  = waitStart + millis;
+        votes.clear();
     }
 
     /**
      * Reception of a message.
-     * Messages are received only if the node is not broken, and they are stored into a queue.
+     * Messages are received only if the node is not broken, and they are stored into the (possibly bounded) mailbox.
      */
     public void receive(@NotNull Message msg) {
         // receive messages only if not broken
-        if (broken.equals(stato))
+        if (broken.equals(stato)) {
+            MessageReceiveEvent.emit(msg, rank, MessageReceiveEvent.Outcome.ignored);
             return;
+        }
+
+        // drop the repeated messages, before they cause any reply
+        if (DEDUPLICATION && !dedup.accept(msg.getSender(), msg.getSequence())) {
+            MessageReceiveEvent.emit(msg, rank, MessageReceiveEvent.Outcome.suppressed);
+            return;
+        }
+
+        // a node that has already decided answers with [success], so late nodes can still learn the decision
+        if (decision) {
+            if (msg.getSender() != rank && !success.equals(msg.getType())) {
+                channel.send(this, msg.getSender(), new Message(success, rank, decidedRound, value));
+                channel.flush(this);
+            }
+
+            MessageReceiveEvent.emit(msg, rank, MessageReceiveEvent.Outcome.answered);
+            return;
+        }
 
         logIf(Debug.MSG_RECEPTION, "message received: %s", msg);
         dlog(Debug.MSG_RECEPTION, round, "RECEPTION for [Node-%d] of {%s}", rank, msg);
 
-        // update the known-node-set
-        nodesAlive.add(msg.getSender());
+        // update the known-node-set (the learners are not part of it)
+        if (!channel.isLearner(msg.getSender())) {
+            nodesAlive.add(msg.getSender());
+
+            // (failure detector) any message is a proof of life of its sender, not only the heartbeats
+            if (detector != null)
+                detector.heard(msg.getSender(), currentTime());
+        }
+
+        if (rtt != null)
+            sample(msg);
 
         // enqueue the received message
-        messageQueue.add(msg);
+        mailbox.add(msg);
 
         // duplication event
-        if (msg.getSender() != rank && duplication()) {
+        if (msg.getSender() != rank && channel.duplication(msg.getSender(), rank)) {
             dlog(Debug.MSG_DUPLICATED, round, "DUPLICATION of {%s} from [%d] to [%d]",
                     msg, msg.getSender(), rank
             );
 
             channel.summary.duplicatedMessages++;
-            messageQueue.add(msg);
+
+            if (!DEDUPLICATION || dedup.accept(msg.getSender(), msg.getSequence())) {
+                mailbox.add(msg);
+                MessageReceiveEvent.emit(msg, rank, MessageReceiveEvent.Outcome.duplicated);
+                return;
+            }
         }
+
+        MessageReceiveEvent.emit(msg, rank, MessageReceiveEvent.Outcome.enqueued);
     }
 
 
@@ -353,16 +1098,17 @@ public class Node extends Thread implements Runnable {
      *
      * Where:
      *   - round-independent messages are read,
-     *   - execution speed is simulated,
+     *   - the node can break,
      *   - and the success is spread (when received)
      */
     private Status advance() {
-        delay();
+        ticked = true;  // the execution speed is simulated by the driver, between two steps
 
         if (canBroke()) {
             dlog(round, "BROKEN {%s}", this);
             channel.summary.brokenEvents++;
-            stato = broken;
+            channel.summary.nodeBroken(rank, currentTime());
+            become(broken);
             return Status.changed;
         }
 
@@ -370,33 +1116,99 @@ public class Node extends Thread implements Runnable {
         // ------------------------------------------------------------------
         final List<Message> successMessages = filterMessages(success);
 
+        // HEARTBEAT
+        if (FAILURE_DETECTOR)
+            heartbeat();
+
         // QUERY-ALIVE
         for (Message msg: filterMessages(queryAlive)) {
-            channel.send(this, msg.getSender(), new Message(alive));
+            channel.send(this, msg.getSender(), new Message(alive, rank));
         }
 
         // SUCCESS
         if (successMessages.size() > 0) {
-            int valueDecided = successMessages.get(0).getValue();
-            decision = true;
-            value = valueDecided;
-            channel.summary.decidedValue(rank, value);
-
-            logIf(Debug.NODE_DECISION, "has decided %d", value);
-            dlog(round, "[Node-%d-%s] has decided %d", rank, stato, value);
+            learn(successMessages.get(0).getValue(), successMessages.get(0).getR1());
 
             // spread (to others) the success
-            channel.broadcast(this, new Message(success, value));
+            spread();
 
             return Status.changed;
         }
 
-        logIf(Debug.NODE_STATE, this.toString());
-        dlog(Debug.NODE_STATE, round, toString());
+        // PULL
+        if (DISSEMINATION != Dissemination.flood && voter.equals(stato))
+            pull();
+
+        logIf(Debug.NODE_STATE, "%s", this);
+        dlog(Debug.NODE_STATE, round, "%s", this);
 
         return Status.alive;
     }
 
+    /** the node knows the [decided] value, decided in the round [in] */
+    private void learn(int decided, @NotNull Round in) {
+        decision = true;
+        value = decided;
+        decidedRound = in;
+        channel.safety.decided(rank, value);
+        channel.summary.decidedValue(rank, value);
+        channel.learnt(rank, value);
+
+        logIf(Debug.NODE_DECISION, "has decided %d", value);
+        dlog(round, "[Node-%d-%s] has decided %d", rank, stato, value);
+    }
+
+    /** sends the decision to the [Globals.DISSEMINATION] targets of the node (every other node, with the flood) */
+    private void spread() {
+        final List<Integer> targets = DISSEMINATION.targets(rank, decidedRound.getId(), channel.totalSize(), FANOUT,
+                generator);
+
+        channel.multicast(this, new Message(success, rank, decidedRound, value), targets);
+    }
+
+    /**
+     * (tree, gossip) A lost [success] can cut a node off the spread: a voter that heard a leader, and then nothing
+     * for [Globals.TIMEOUT] ms, asks a random node with a [queryAlive] (a node that has decided answers with the
+     * success, see [receive]), and again every [Globals.TIMEOUT] ms.
+     */
+    private void pull() {
+        final long now = currentTime();
+
+        if (lastLeaderTime == 0 || now - Math.max(lastLeaderTime, lastPull) < Math.max(1, TIMEOUT))
+            return;
+
+        final int nodes = channel.totalSize();
+        lastPull = now;
+        channel.send(this, (rank + 1 + generator.nextInt(nodes - 1)) % nodes, new Message(queryAlive, rank));
+    }
+
+    /**
+     * Merges the received heartbeats, gossips the own heartbeat counters to a random node (once every
+     * [Globals.HEARTBEAT_INTERVAL] ms), and updates the known-node-set according to the failure detector.
+     */
+    private void heartbeat() {
+        final long now = currentTime();
+
+        for (Message msg: filterMessages(heartbeat))
+            detector.merge(msg.getHeartbeats(), now);
+
+        if (!sharedDetector && channel.size() > 1 && detector.shouldBeat(now)) {
+            int peer = generator.nextInt(channel.size() - 1);
+
+            if (peer >= rank)
+                peer++;
+
+            channel.send(this, peer, new Message(heartbeat, rank, detector.beat(now)));
+        }
+
+        updateAliveNodes(now);
+    }
+
+    /** the known-node-set becomes the view of the failure detector */
+    private void updateAliveNodes(long now) {
+        detector.update(nodesAlive, now, id -> channel.summary.failureDetected(id, now));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -407,6 +1219,11 @@ public class Node extends Thread implements Runnable {
         return rank == node.rank;
     }
 
+    @Override
+    public int hashCode() {
+        return rank;
+    }
+
     public int getRank() {
 
         return rank;
@@ -420,12 +1237,38 @@ public class Node extends Thread implements Runnable {
         return round;
     }
 
+    Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    /** the messages dropped as repeated (see [Globals.DEDUPLICATION]) */
+    int getSuppressed() {
+        return (dedup != null) ? dedup.getSuppressed() : 0;
+    }
+
+    /** time (ms) between two computation steps */
+    int getExeSpeed() {
+        return exeSpeed;
+    }
+
     /** state of the node */
     enum State {
         leader,
         voter,
         broken,
         candidate,
+        learner,
+    }
+
+    /** the wait of the node within a phase: the protocol timeouts, the backoff and the repair */
+    enum Wait {
+        none,
+        backoff,
+        preVote,
+        last,
+        accept,
+        alive,
+        repair,
     }
 
     /** status of the node */
@@ -446,15 +1289,16 @@ public class Node extends Thread implements Runnable {
     //------------------------------------------------------------------------------------------------------------------
 
     private void delay() {
-        try { sleep(exeSpeed); } catch (InterruptedException ignored) { }
+        try { Thread.sleep(exeSpeed); } catch (InterruptedException ignored) { }
     }
 
-    private long currentTime() {
-        return java.lang.System.currentTimeMillis();
+    /** (adaptive, thrifty) no estimate yet: every peer waited [Globals.TIMEOUT] ms */
+    private RttEstimator newRttEstimator() {
+        return new RttEstimator(channel.size(), TIMEOUT, MIN_TIMEOUT, (MAX_TIMEOUT > 0) ? MAX_TIMEOUT : 4L * TIMEOUT);
     }
 
-    private boolean majority(int amount) {
-        return (amount >= (nodesAlive.size() + 1) / 2);
+    private long currentTime() {
+        return java.lang.System.currentTimeMillis();
     }
 
     /** simulate the breaking event of a node */
@@ -463,27 +1307,20 @@ public class Node extends Thread implements Runnable {
     }
 
     private boolean isElectionTimeoutExpired() {
-        return (currentTime() - deltaTime > Globals.ELECTION_TIMEOUT);
+        return (currentTime() - deltaTime > electionTimeout());
     }
 
-    /** simulate the duplication event of a message */
-    private boolean duplication() {
-        int guess = 1 + generator.nextInt(100);
-        return guess <= MESSAGE_DUPLICATION_RATE;
+    /** [Globals.ELECTION_TIMEOUT], or (adaptive) scaled as the phase-1 timeout is with respect to [TIMEOUT] */
+    private long electionTimeout() {
+        if (!ADAPTIVE_TIMEOUTS || TIMEOUT == 0)
+            return ELECTION_TIMEOUT;
+
+        return Math.max(MIN_TIMEOUT, ELECTION_TIMEOUT * rttTimeout(true) / TIMEOUT);
     }
 
     /** get a list of messages according to the given [type] */
     private List<Message> filterMessages(Message.Type type) {
-        List<Message> selected = new ArrayList<>();
-
-        for (Message message: messageQueue) {
-            if (type.equals(message.getType())) {
-                selected.add(message);
-                messageQueue.remove(message);
-            }
-        }
-
-        return selected;
+        return mailbox.take(type);
     }
 
     /** get the value for the next round according to the known rounds */
@@ -514,6 +1351,9 @@ public class Node extends Thread implements Runnable {
     }
 
     private void dlog(final Round round, final String format, Object...args) {
+        if (!Debug.EXECUTIONS_LOG)
+            return;
+
         final String key = String.format("15%d %s", currentTime(), round);
         Debug.log(key, format, args);
     }
@@ -523,12 +1363,17 @@ public class Node extends Thread implements Runnable {
     }
 
     private void dlog(boolean flag, final Round round, final String format, Object...args) {
+        if (!Debug.isLogging(flag))
+            return;
+
         final String key = String.format("15%d %s", currentTime(), round);
-        Debug.logIf(flag, key, format, args);
+        Debug.log(key, format, args);
     }
 
     //------------------------------------------------------------------------------------------------------------------
     // -- CONSTANTS
     //------------------------------------------------------------------------------------------------------------------
     private static final Random generator = new Random();
+    private static final int MAX_BACKOFF_EXPONENT = 6;
+    private static final int NO_VALUE = Integer.MIN_VALUE;  // the value of a learner, until it learns the decision
 }
@@ -1,5 +1,7 @@
 package com.luca.anzalone;
 
+import com.luca.anzalone.quorum.MajorityQuorum;
+import com.luca.anzalone.scenario.BatchRunner;
 import com.luca.anzalone.stats.AverageSummary;
 import com.luca.anzalone.utils.Debug;
 import com.luca.anzalone.utils.Globals;
@@ -7,6 +9,7 @@ import com.sun.istack.internal.NotNull;
 import com.sun.istack.internal.Nullable;
 import com.sun.media.jfxmedia.logging.Logger;
 
+import java.io.IOException;
 import java.util.Scanner;
 import java.util.function.Consumer;
 
@@ -18,10 +21,16 @@ import java.util.function.Consumer;
 public class Paxos {
     private static final Scanner scanner = new Scanner(System.in);
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Logger.setLevel(Logger.DEBUG);
         title();
 
+        // headless: run the given scenario files
+        if (args.length > 0) {
+            BatchRunner.fromArgs(args).run();
+            System.exit(0);
+        }
+
         // environment parameters
         Globals.CHANNEL_DELAY     = 100;
         Globals.TIMEOUT           = (Globals.CHANNEL_DELAY * 3);
@@ -31,6 +40,23 @@ public class Paxos {
         Globals.MAX_EXE_SPEED     = 10;
         Globals.BROKEN_TIME       = Globals.CHANNEL_DELAY * 4;
         Globals.ELECTION_TIMEOUT  = Globals.TIMEOUT + Globals.BROKEN_TIME;
+        Globals.FAILURE_DETECTOR  = false;
+        Globals.HEARTBEAT_INTERVAL = Globals.CHANNEL_DELAY / 2;
+        Globals.BACKOFF           = 0;
+        Globals.PRE_VOTE          = false;
+        Globals.SAFETY_CHECK      = false;
+        Globals.QUORUM            = new MajorityQuorum();
+        Globals.EVENT_LOOPS       = 0;
+//        Globals.TRACE_FILE = "trace.json";
+//        Globals.EVENT_LOOPS = Runtime.getRuntime().availableProcessors();
+//        Globals.QUORUM = new FlexibleQuorum(3, 2);
+//        Globals.QUORUM = new GridQuorum(2, 2);
+//        Globals.QUORUM = new WeightedQuorum(2, 1, 1, 1);
+//        Globals.TOPOLOGY = new Topology(4)
+//                .regions(new int[] {0, 0, 1, 1}, Topology.Distribution.constant, 5, 0,
+//                                                 Topology.Distribution.logNormal, 80, 0.5f)
+//                .partitionAt(200, new int[] {0, 1}, new int[] {2, 3})
+//                .healAt(600);
 
         // debug profile
         Debug.CONSOLE_LOG = false;
@@ -52,6 +78,7 @@ public class Paxos {
             try { num = Integer.parseInt(input); } catch (RuntimeException ignored) {}
 
             new AverageSummary(num, 1, 2, 0, 3)
+//                    .stopWhen(AverageSummary.Metric.time, 0.05)
                     .calculate()
                     .print();
 
@@ -0,0 +1,230 @@
+package com.luca.anzalone;
+
+import com.luca.anzalone.network.DedupWindow;
+import com.luca.anzalone.network.FailureDetector;
+import com.luca.anzalone.network.RttEstimator;
+import com.luca.anzalone.utils.Message;
+import com.luca.anzalone.utils.Round;
+import com.sun.istack.internal.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A Snapshot is the state of a whole cluster at a given time (see [Channel.snapshot]): the state of every node,
+ * its mailbox included, plus the messages in flight across the channel.
+ *
+ * A snapshot is immutable, and so are the messages and the rounds it holds: the what-if variants ([withLost],
+ * [withDelay]) share everything but the (copied) list of the in-flight messages, and [Channel.fork] copies a node
+ * state only when it becomes a running node. So many divergent continuations can be forked from a single snapshot.
+ *
+ * @author Luca Anzalone
+ */
+public class Snapshot {
+    private final long takenAt;   // (wall-clock) time of the snapshot
+    private final long elapsed;   // time elapsed since the launch of the channel
+    private final int[] proposals;
+    private final long[] sequences;  // the last sequence number of each sender (null, without deduplication)
+    private final List<NodeState> nodes;
+    private final List<InFlight> inFlight;
+
+
+    Snapshot(long takenAt, long elapsed, @NotNull int[] proposals, long[] sequences,
+             @NotNull List<NodeState> nodes, @NotNull List<InFlight> inFlight) {
+        this.takenAt = takenAt;
+        this.elapsed = elapsed;
+        this.proposals = proposals;
+        this.sequences = sequences;
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.inFlight = Collections.unmodifiableList(inFlight);
+    }
+
+    /** what if the [i]-th in-flight envelope were lost */
+    public Snapshot withLost(int i) {
+        final List<InFlight> flights = new ArrayList<>(inFlight);
+        flights.remove(i);
+
+        return new Snapshot(takenAt, elapsed, proposals, sequences, nodes, flights);
+    }
+
+    /** what if the [i]-th in-flight envelope were delayed by [extra] more ms */
+    public Snapshot withDelay(int i, long extra) {
+        final List<InFlight> flights = new ArrayList<>(inFlight);
+        final InFlight flight = flights.get(i);
+        flights.set(i, new InFlight(flight.from, flight.to, flight.envelope, flight.due + extra));
+
+        return new Snapshot(takenAt, elapsed, proposals, sequences, nodes, flights);
+    }
+
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /** the initial value of each node */
+    public int[] getProposals() {
+        return proposals.clone();
+    }
+
+    /** the last sequence number given to each sender (see [Globals.DEDUPLICATION]), or null */
+    long[] getSequences() {
+        return (sequences == null) ? null : sequences.clone();
+    }
+
+    public List<NodeState> getNodes() {
+        return nodes;
+    }
+
+    public List<InFlight> getInFlight() {
+        return inFlight;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Snapshot [elapsed: %dms, nodes: %s, in-flight: %s]", elapsed, nodes, inFlight);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** an envelope sent from [from] to [to], that will be delivered at time [due] */
+    public static class InFlight {
+        final int from;
+        final int to;
+        final List<Message> envelope;
+        final long due;
+
+        InFlight(int from, int to, @NotNull List<Message> envelope, long due) {
+            this.from = from;
+            this.to = to;
+            this.envelope = envelope;
+            this.due = due;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getTo() {
+            return to;
+        }
+
+        public List<Message> getEnvelope() {
+            return envelope;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d -> %d %s", from, to, envelope);
+        }
+    }
+
+    /** the state of a node (the times are absolute, they're moved forward when the node is restored) */
+    public static class NodeState {
+        final int rank;
+        final int value;
+        final int exeSpeed;
+        final Node.State state;
+        final boolean decision;
+        final Round decidedRound;
+        final Round round;
+        final Round commit;
+        final Round lastRound;
+        final int lastValue;
+        final int proposedValue;
+        final Round proposedRound;
+        final long deltaTime;
+        final int attempts;
+        final int lastLeader;
+        final long lastLeaderTime;
+        final long lastPull;
+        final Node.Wait wait;
+        final long waitStart;
+        final long deadline;
+        final Set<Integer> votes;
+        final Set<Integer> asked;
+        final Message pending;
+        final long widenAt;
+        final Round proposal;
+        final Set<Integer> nodesAlive;
+        final List<Message> mailbox;
+        final FailureDetector detector;  // copies, never modified
+        final DedupWindow dedup;
+        final RttEstimator rtt;
+
+        NodeState(int rank, int value, int exeSpeed, Node.State state, boolean decision, Round decidedRound,
+                  Round round, Round commit, Round lastRound, int lastValue, int proposedValue, Round proposedRound,
+                  long deltaTime,
+                  int attempts, int lastLeader, long lastLeaderTime, long lastPull,
+                  Node.Wait wait, long waitStart, long deadline, Set<Integer> votes,
+                  Set<Integer> asked, Message pending, long widenAt, Round proposal,
+                  Set<Integer> nodesAlive, List<Message> mailbox, FailureDetector detector, DedupWindow dedup,
+                  RttEstimator rtt) {
+            this.rank = rank;
+            this.value = value;
+            this.exeSpeed = exeSpeed;
+            this.state = state;
+            this.decision = decision;
+            this.decidedRound = decidedRound;
+            this.round = round;
+            this.commit = commit;
+            this.lastRound = lastRound;
+            this.lastValue = lastValue;
+            this.proposedValue = proposedValue;
+            this.proposedRound = proposedRound;
+            this.deltaTime = deltaTime;
+            this.attempts = attempts;
+            this.lastLeader = lastLeader;
+            this.lastLeaderTime = lastLeaderTime;
+            this.lastPull = lastPull;
+            this.wait = wait;
+            this.waitStart = waitStart;
+            this.deadline = deadline;
+            this.votes = Collections.unmodifiableSet(votes);
+            this.asked = Collections.unmodifiableSet(asked);
+            this.pending = pending;
+            this.widenAt = widenAt;
+            this.proposal = proposal;
+            this.nodesAlive = Collections.unmodifiableSet(nodesAlive);
+            this.mailbox = Collections.unmodifiableList(mailbox);
+            this.detector = detector;
+            this.dedup = dedup;
+            this.rtt = rtt;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+
+        public Round getRound() {
+            return round;
+        }
+
+        public Round getCommit() {
+            return commit;
+        }
+
+        public boolean hasDecided() {
+            return decision;
+        }
+
+        public List<Message> getMailbox() {
+            return mailbox;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Node-%d [%s%s, round: %s, commit: %s, last: %s/%d, mailbox: %d]",
+                    rank, state, decision ? " (decided " + value + ")" : "", round, commit, lastRound, lastValue,
+                    mailbox.size());
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.luca.anzalone.explorer;
+
+import com.luca.anzalone.quorum.QuorumSystem;
+import com.luca.anzalone.scenario.Scenario;
+import com.luca.anzalone.utils.Globals;
+import com.sun.istack.internal.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Explorer is a model checker for small clusters (3 to 5 nodes): instead of sampling random executions, it
+ * enumerates every interleaving of the protocol (see [ModelState]), breadth-first, and checks agreement and
+ * validity in every reachable state.
+ *
+ * The choices are the ones of the simulation: deliver a message, duplicate it (when [duplication] is set), lose it
+ * ([loss]), a node timeout, a node breaking (at most [maxBreaks] times). The rounds are bounded by [maxRound],
+ * and the leader attempts (the timeouts of all the nodes) by [maxAttempts]. The pre-vote ([preVote]) and the
+ * learners ([learners]) are part of the model, as [Globals.PRE_VOTE] and [Globals.LEARNERS] are of the simulation;
+ * the backoff and the thrifty phases need no switch (see [ModelState]).
+ * The visited states are kept as 64-bit fingerprints ([FingerprintSet]), and each level of the search is expanded
+ * in parallel. The quorums are the ones of [Globals.QUORUM], counted against all the nodes as [Channel] does: the
+ * model has no set of known nodes, any node can time out and lead.
+ *
+ * Usage: scenario.properties [max attempts] [max round] [max breaks] [max states]
+ * (the loss and the duplication of messages are enabled by the rates of the scenario)
+ *
+ * @author Luca Anzalone
+ */
+public class Explorer {
+    private final int[] proposals;
+    private final Set<Integer> proposed = new TreeSet<>();
+    private int maxRound = 2;
+    private int maxBreaks = 0;
+    private int maxAttempts = 3;
+    private boolean loss = false;
+    private boolean duplication = false;
+    private boolean preVote = false;
+    private int learners = 0;
+    private int maxStates = 10_000_000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    // quorums of each bit-mask of voters
+    private boolean[] phase1Quorums;
+    private boolean[] phase2Quorums;
+    // results
+    private FingerprintSet visited;
+    private final LongAdder transitions = new LongAdder();
+    private volatile ModelState counterexample;
+    private String violation;
+    private int depth;
+    private long elapsed;  // ns
+    private boolean exhausted;
+
+
+    public Explorer(@NotNull int... proposals) {
+        if (proposals.length < 1 || proposals.length > 8)
+            throw new IllegalArgumentException("the explorer supports 1 to 8 nodes: " + proposals.length);
+
+        for (int value: proposals) {
+            if (value < 0 || value > 0xFF)
+                throw new IllegalArgumentException("proposed values must be in [0, 255]: " + value);
+
+            proposed.add(value);
+        }
+
+        this.proposals = proposals;
+    }
+
+    /** the highest round count a node can start */
+    public Explorer maxRound(int maxRound) {
+        if (maxRound < 1 || (maxRound + 1) * proposals.length > 0xFFF)
+            throw new IllegalArgumentException("max round out of range: " + maxRound);
+
+        this.maxRound = maxRound;
+        return this;
+    }
+
+    /** the number of breakings (memory resets) in an execution */
+    public Explorer maxBreaks(int maxBreaks) {
+        assert maxBreaks >= 0;
+
+        this.maxBreaks = maxBreaks;
+        return this;
+    }
+
+    /** the number of timeouts (rounds started by a leader) in an execution, in the whole cluster */
+    public Explorer maxAttempts(int maxAttempts) {
+        assert maxAttempts > 0;
+
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public Explorer loss(boolean loss) {
+        this.loss = loss;
+        return this;
+    }
+
+    public Explorer duplication(boolean duplication) {
+        this.duplication = duplication;
+        return this;
+    }
+
+    public Explorer preVote(boolean preVote) {
+        this.preVote = preVote;
+        return this;
+    }
+
+    /** the number of learners, after the voters (up to 16 nodes in all) */
+    public Explorer learners(int learners) {
+        if (learners < 0 || proposals.length + learners > 16)
+            throw new IllegalArgumentException("the explorer supports up to 16 nodes, learners included: " + learners);
+
+        this.learners = learners;
+        return this;
+    }
+
+    /** the search stops (truncated) after [maxStates] distinct states */
+    public Explorer maxStates(int maxStates) {
+        assert maxStates > 0;
+
+        this.maxStates = maxStates;
+        return this;
+    }
+
+    public Explorer threads(int threads) {
+        assert threads > 0;
+
+        this.threads = threads;
+        return this;
+    }
+
+    /** explores the state space, until it's exhausted, a violation is found, or [maxStates] are visited */
+    public Explorer run() {
+        final int n = proposals.length;
+        Globals.QUORUM.validate(n);
+        quorums(Globals.QUORUM, n);
+
+        visited = new FingerprintSet(maxStates);
+        transitions.reset();
+        counterexample = null;
+        exhausted = false;
+        depth = 0;
+
+        final ModelState initial = ModelState.initial(this);
+        visited.add(initial.fingerprint());
+        List<ModelState> frontier = Collections.singletonList(initial);
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final long start = System.nanoTime();
+
+        try {
+            while (!frontier.isEmpty() && counterexample == null && visited.size() < maxStates) {
+                final List<ModelState> level = frontier;
+                final Queue<ModelState> next = new ConcurrentLinkedQueue<>();
+
+                pool.submit(() -> level.parallelStream().forEach(state -> expand(state, next))).get();
+
+                frontier = new ArrayList<>(next);
+                depth++;
+                print("> depth %d: %d states, %d in the frontier, %.0f states/s", depth, visited.size(),
+                        frontier.size(), statesPerSecond(System.nanoTime() - start));
+            }
+
+            exhausted = frontier.isEmpty() && counterexample == null;
+        } catch (InterruptedException | ExecutionException e) {
+            if (e.getCause() instanceof IllegalStateException)
+                print("> stopped: %s", e.getCause().getMessage());  // the fingerprint set is full
+            else if (e.getCause() instanceof OutOfMemoryError)
+                print("> stopped: out of memory at depth %d, the frontier is too large", depth + 1);
+            else
+                throw new IllegalStateException(e);
+        } finally {
+            elapsed = System.nanoTime() - start;
+            pool.shutdown();
+        }
+
+        return this;
+    }
+
+    private void expand(@NotNull ModelState state, @NotNull Queue<ModelState> next) {
+        if (counterexample != null || visited.size() >= maxStates)
+            return;
+
+        state.successors(this, successor -> {
+            transitions.increment();
+
+            if (!visited.add(successor.fingerprint()))
+                return;
+
+            final String property = successor.violation(this);
+
+            if (property != null) {
+                found(successor, property);
+                return;
+            }
+
+            next.add(successor);
+        });
+    }
+
+    private synchronized void found(@NotNull ModelState state, @NotNull String property) {
+        if (counterexample == null) {
+            violation = property;
+            counterexample = state;
+        }
+    }
+
+    /** precomputes, for each bit-mask of voters, if it's a phase 1 (phase 2) quorum */
+    private void quorums(@NotNull QuorumSystem quorum, int n) {
+        phase1Quorums = new boolean[1 << n];
+        phase2Quorums = new boolean[1 << n];
+
+        for (int mask = 0; mask < (1 << n); ++mask) {
+            final Set<Integer> voters = new TreeSet<>();
+
+            for (int rank = 0; rank < n; ++rank) {
+                if ((mask & (1 << rank)) != 0)
+                    voters.add(rank);
+            }
+
+            phase1Quorums[mask] = quorum.isPhase1Quorum(voters, n);
+            phase2Quorums[mask] = quorum.isPhase2Quorum(voters, n);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Model parameters (used by ModelState)
+    // -----------------------------------------------------------------------------------------------------------------
+
+    int size() {
+        return proposals.length;
+    }
+
+    int proposal(int rank) {
+        return proposals[rank];
+    }
+
+    boolean isProposed(int value) {
+        return proposed.contains(value);
+    }
+
+    boolean isPhase1Quorum(int votes) {
+        return phase1Quorums[votes];
+    }
+
+    boolean isPhase2Quorum(int votes) {
+        return phase2Quorums[votes];
+    }
+
+    int getMaxRound() {
+        return maxRound;
+    }
+
+    int getMaxBreaks() {
+        return maxBreaks;
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    boolean hasLoss() {
+        return loss;
+    }
+
+    boolean hasDuplication() {
+        return duplication;
+    }
+
+    boolean hasPreVote() {
+        return preVote;
+    }
+
+    int getLearners() {
+        return learners;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Results
+    // -----------------------------------------------------------------------------------------------------------------
+
+    public int getStates() {
+        return visited.size();
+    }
+
+    public double statesPerSecond() {
+        return statesPerSecond(elapsed);
+    }
+
+    private double statesPerSecond(long nanos) {
+        return (nanos == 0) ? 0 : visited.size() / (nanos / 1e9);
+    }
+
+    /** whether no violation is reachable (within the bounds of the model) */
+    public boolean isSafe() {
+        return exhausted;
+    }
+
+    /** the violated property, or null */
+    public String getViolation() {
+        return violation;
+    }
+
+    /** the transitions leading to the violation (empty if there's none) */
+    public List<String> getCounterexample() {
+        return (counterexample == null) ? Collections.emptyList() : counterexample.trace(this);
+    }
+
+    public void print() {
+        System.out.println(this);
+    }
+
+    private void print(String format, Object...args) {
+        System.out.println(String.format(Locale.ROOT, format, args));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("\nExplorer [\n\t")
+                .append("> Model: ").append(proposals.length).append(" nodes, quorum: ").append(Globals.QUORUM)
+                .append(", max attempts: ").append(maxAttempts)
+                .append(", max round: ").append(maxRound).append(", max breaks: ").append(maxBreaks)
+                .append(", loss: ").append(loss).append(", duplication: ").append(duplication)
+                .append(", pre-vote: ").append(preVote).append(", learners: ").append(learners).append("\n\t")
+                .append("> Search:\n\t\t")
+                .append("- states: ").append(visited.size()).append(" (").append(transitions.sum()).append(" transitions)\n\t\t")
+                .append("- depth: ").append(depth).append("\n\t\t")
+                .append("- time: ").append(elapsed / 1_000_000).append("ms (")
+                .append(String.format(Locale.ROOT, "%.0f", statesPerSecond())).append(" states/s, ").append(threads).append(" threads)\n\t")
+                .append("> Result: ");
+
+        if (counterexample != null) {
+            sb.append("VIOLATION of ").append(violation).append(", after ")
+              .append(counterexample.depth).append(" transitions:\n\t\t");
+
+            for (String step: getCounterexample())
+                sb.append("- ").append(step).append("\n\t\t");
+
+            sb.setLength(sb.length() - 1);
+        } else if (exhausted) {
+            sb.append("safe, the state space has been exhausted\n");
+        } else {
+            sb.append("no violation, but truncated at ").append(visited.size()).append(" states\n");
+        }
+
+        return sb.append("]").toString();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [max attempts] [max round] [max breaks] [max states]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        scenario.apply();
+
+        final Explorer explorer = new Explorer(scenario.getValues())
+                .loss(Globals.MESSAGE_LOST_RATE > 0)
+                .duplication(Globals.MESSAGE_DUPLICATION_RATE > 0)
+                .maxBreaks(Globals.BROKEN_RATE > 0 ? 1 : 0)
+                .preVote(Globals.PRE_VOTE)
+                .learners(Globals.LEARNERS);
+
+        if (args.length > 1)
+            explorer.maxAttempts(Integer.parseInt(args[1]));
+
+        if (args.length > 2)
+            explorer.maxRound(Integer.parseInt(args[2]));
+
+        if (args.length > 3)
+            explorer.maxBreaks(Integer.parseInt(args[3]));
+
+        if (args.length > 4)
+            explorer.maxStates(Integer.parseInt(args[4]));
+
+        System.out.println("> Scenario: " + scenario.getName());
+        explorer.run().print();
+    }
+}
@@ -0,0 +1,73 @@
+package com.luca.anzalone.explorer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free set of 64-bit state fingerprints (open addressing, linear probing): 8 bytes per visited state.
+ * Two states with the same fingerprint are considered the same (hash compaction): with 64 bits the chance of
+ * wrongly pruning a state is negligible for the millions of states the [Explorer] visits.
+ *
+ * @author Luca Anzalone
+ */
+public class FingerprintSet {
+    private static final long EMPTY = 0;
+    private static final double MAX_LOAD = 0.9;
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int limit;
+    private final AtomicInteger size = new AtomicInteger();
+
+
+    /** a set for (at least) [capacity] fingerprints */
+    public FingerprintSet(int capacity) {
+        if (capacity < 1 || capacity > (1 << 29))
+            throw new IllegalArgumentException("fingerprint set capacity out of range: " + capacity);
+
+        final int slots = Integer.highestOneBit((int) Math.ceil(capacity / MAX_LOAD)) << 1;
+        this.table = new AtomicLongArray(slots);
+        this.mask  = slots - 1;
+        this.limit = (int) (slots * MAX_LOAD);
+    }
+
+    /**
+     * Adds the [fingerprint], returns true if it wasn't already in the set.
+     * Throws [IllegalStateException] when the set is full.
+     */
+    public boolean add(long fingerprint) {
+        if (fingerprint == EMPTY)
+            fingerprint = 1;  // 0 marks the empty slots
+
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+
+        while (true) {
+            final long current = table.get(slot);
+
+            if (current == fingerprint)
+                return false;
+
+            if (current == EMPTY) {
+                if (table.compareAndSet(slot, EMPTY, fingerprint)) {
+                    if (size.incrementAndGet() > limit)
+                        throw new IllegalStateException("fingerprint set full: " + limit + " states");
+
+                    return true;
+                }
+
+                continue;  // another thread took the slot, check it again
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /** number of fingerprints the set can hold */
+    public int capacity() {
+        return limit;
+    }
+}
@@ -0,0 +1,474 @@
+package com.luca.anzalone.explorer;
+
+import com.luca.anzalone.utils.Message;
+import com.sun.istack.internal.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.luca.anzalone.utils.Message.Type.*;
+
+/**
+ * A state of the model explored by the [Explorer]: the protocol variables of each node plus the messages in
+ * the network, with the same rules of [Node] (voter phase, phase 1 and 2 of a leader, success, repair), but
+ * without time: any enabled choice (deliver, duplicate or lose a message, a node timeout, a node breaking) is
+ * a transition.
+ *
+ * The state is two arrays (copied on each transition): 10 ints per node, and the network as a sorted set of
+ * messages, each one packed into a long. Elections are abstracted: any node can time out and start a round.
+ *
+ * The tuned variants of [Node] are covered too:
+ *   - with the pre-vote ([Explorer.preVote]) a timeout starts a pre-vote instead, and the round is started only when
+ *     a phase 1 quorum granted it; a voter grants any round it could accept (a vote denied because of a recent
+ *     leader is as a lost reply);
+ *   - the learners ([Explorer.learners]) follow the voters: they never time out nor break, and only receive the
+ *     [success] (a pull only asks a decided node for the same success again);
+ *   - the backoff and the thrifty phases only change when the messages are sent: a backoff is a later timeout, a
+ *     request sent to a quorum first and widened later is a request whose other copies are delivered later, and the
+ *     model already has every order of timeouts and deliveries (the tree and the gossip dissemination, likewise, send
+ *     a subset of the flooded [success] messages).
+ *
+ * @author Luca Anzalone
+ */
+class ModelState {
+    // node fields
+    private static final int PHASE = 0;       // 0: voter, 1: waiting [last], 2: waiting [accept], 3: pre-vote, 4: learner
+    private static final int ROUND = 1;       // rounds are encoded as count * N + id
+    private static final int COMMIT = 2;
+    private static final int LAST_ROUND = 3;
+    private static final int LAST_VALUE = 4;
+    private static final int PROPOSED = 5;
+    private static final int VOTES = 6;       // bit-mask of the senders of [last] or [accept]
+    private static final int DECIDED = 7;     // decided value, or -1
+    private static final int PROPOSED_ROUND = 8;  // round in which the [PROPOSED] value was accepted, or -1
+    private static final int PROPOSAL = 9;    // the round asked by the pre-vote
+    private static final int FIELDS = 10;
+    private static final int VOTER = 0, PHASE_1 = 1, PHASE_2 = 2, PRE_VOTE = 3, LEARNER = 4;
+    // transitions
+    static final byte INITIAL = 0, TIMEOUT = 1, DELIVER = 2, DUPLICATE = 3, LOSE = 4, BREAK = 5;
+
+    private final int[] nodes;
+    private final long[] network;
+    private final int breaks;
+    private final int attempts;  // timeouts, in the whole cluster
+    // how the state has been reached (for the counterexamples)
+    final ModelState parent;
+    final byte action;
+    final int actor;
+    final long message;
+    final int depth;
+
+
+    private ModelState(int[] nodes, long[] network, int breaks, int attempts,
+                       ModelState parent, byte action, int actor, long message) {
+        this.nodes = nodes;
+        this.network = network;
+        this.breaks = breaks;
+        this.attempts = attempts;
+        this.parent = parent;
+        this.action = action;
+        this.actor = actor;
+        this.message = message;
+        this.depth = (parent == null) ? 0 : parent.depth + 1;
+    }
+
+    /** the initial state: every node is a voter of round (0, rank), or a learner, nothing has been sent */
+    static ModelState initial(@NotNull Explorer explorer) {
+        final int n = explorer.size();
+        final int total = n + explorer.getLearners();
+        final int[] nodes = new int[total * FIELDS];
+
+        for (int rank = 0; rank < n; ++rank)
+            reset(nodes, rank, explorer.proposal(rank));
+
+        for (int rank = n; rank < total; ++rank)
+            nodes[rank * FIELDS + PHASE] = LEARNER;
+
+        for (int rank = 0; rank < total; ++rank)
+            nodes[rank * FIELDS + DECIDED] = -1;
+
+        return new ModelState(nodes, new long[0], 0, 0, null, INITIAL, -1, 0);
+    }
+
+    /** the memory of a node: as at the beginning, or after a repair */
+    private static void reset(int[] nodes, int rank, int value) {
+        final int base = rank * FIELDS;
+
+        nodes[base + PHASE] = VOTER;
+        nodes[base + ROUND] = rank;
+        nodes[base + COMMIT] = rank;
+        nodes[base + LAST_ROUND] = rank;
+        nodes[base + LAST_VALUE] = value;
+        nodes[base + PROPOSED] = value;
+        nodes[base + PROPOSED_ROUND] = -1;
+        nodes[base + VOTES] = 0;
+        nodes[base + PROPOSAL] = -1;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Transitions
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** generates every successor of this state */
+    void successors(@NotNull Explorer explorer, @NotNull Consumer<ModelState> out) {
+        final int n = explorer.size();
+
+        for (int rank = 0; rank < n; ++rank) {
+            if (decided(rank) >= 0)
+                continue;
+
+            // a timeout: the node starts a new round (as a leader), or asks for it with the pre-vote
+            final int next = nextRound(nodes, rank, n);
+
+            if (next / n <= explorer.getMaxRound() && attempts < explorer.getMaxAttempts())
+                out.accept(explorer.hasPreVote() ? preVote(explorer, rank, next) : timeout(explorer, rank, next));
+
+            // the node breaks, and forgets everything
+            if (breaks < explorer.getMaxBreaks()) {
+                final int[] copy = nodes.clone();
+                reset(copy, rank, explorer.proposal(rank));
+                out.accept(new ModelState(copy, network, breaks + 1, attempts, this, BREAK, rank, 0));
+            }
+        }
+
+        for (int i = 0; i < network.length; ++i) {
+            final long msg = network[i];
+            final boolean lossy = explorer.hasLoss() && from(msg) != to(msg);
+            final boolean deliverable = isDeliverable(msg);
+
+            if (!deliverable && !lossy)
+                continue;
+
+            final long[] rest = remove(network, i);
+
+            if (deliverable) {
+                out.accept(deliver(explorer, msg, rest, DELIVER));
+
+                if (explorer.hasDuplication())
+                    out.accept(deliver(explorer, msg, network, DUPLICATE));  // the message can be received again
+            }
+
+            if (lossy)
+                out.accept(new ModelState(nodes, rest, breaks, attempts, this, LOSE, to(msg), msg));
+        }
+    }
+
+    private ModelState timeout(Explorer explorer, int rank, int round) {
+        final int[] copy = nodes.clone();
+        final long[] net = collect(copy, network, rank, round, explorer.size());
+
+        return new ModelState(copy, net, breaks, attempts + 1, this, TIMEOUT, rank, 0);
+    }
+
+    /** as [Node.startCollect]: phase 1 of the given [round] */
+    private static long[] collect(int[] nodes, long[] net, int rank, int round, int n) {
+        final int base = rank * FIELDS;
+
+        nodes[base + ROUND] = round;
+        nodes[base + PHASE] = PHASE_1;
+        nodes[base + VOTES] = 0;
+        nodes[base + PROPOSED_ROUND] = nodes[base + LAST_ROUND];  // the own accepted value counts
+        nodes[base + PROPOSED] = nodes[base + LAST_VALUE];
+
+        for (int to = 0; to < n; ++to)
+            net = add(net, pack(collect, rank, to, round, 0, 0));
+
+        return net;
+    }
+
+    /** as [Node.startPreVote]: the node asks the voters whether they would follow it in the [round] */
+    private ModelState preVote(Explorer explorer, int rank, int round) {
+        final int[] copy = nodes.clone();
+        final int base = rank * FIELDS;
+        long[] net = network;
+
+        copy[base + PHASE] = PRE_VOTE;
+        copy[base + PROPOSAL] = round;
+        copy[base + VOTES] = 0;
+
+        for (int to = 0; to < explorer.size(); ++to)
+            net = add(net, pack(preVote, rank, to, round, 0, 0));
+
+        return new ModelState(copy, net, breaks, attempts + 1, this, TIMEOUT, rank, 0);
+    }
+
+    /** the [last], [accept] and [oldRound] messages wait (in the mailbox) until the receiver is a leader */
+    private boolean isDeliverable(long msg) {
+        final int to = to(msg);
+
+        if (decided(to) >= 0)
+            return true;
+
+        switch (type(msg)) {
+            case last:           return phase(to) == PHASE_1;
+            case accept:         return phase(to) == PHASE_2;
+            case oldRound:       return phase(to) == PHASE_1 || phase(to) == PHASE_2;
+            case preVoteGranted: return phase(to) == PRE_VOTE;
+            default:             return true;
+        }
+    }
+
+    /** the reception of [msg], as in [Node.receive], [Node.voterPhase] and the leader steps */
+    private ModelState deliver(Explorer explorer, long msg, long[] net, byte action) {
+        final int n = explorer.size();
+        final int[] copy = nodes.clone();
+        final int from = from(msg);
+        final int to = to(msg);
+        final int base = to * FIELDS;
+        final int r1 = r1(msg);
+
+        if (copy[base + PHASE] == LEARNER && copy[base + DECIDED] < 0) {
+            // a learner only waits for the [success] (with the flood, it doesn't spread it)
+            if (type(msg) == success)
+                copy[base + DECIDED] = value(msg);
+
+            return new ModelState(copy, net, breaks, attempts, this, action, to, msg);
+        }
+
+        if (copy[base + DECIDED] >= 0) {
+            // a decided node answers with [success]
+            if (type(msg) != success && from != to)
+                net = add(net, pack(success, to, from, 0, 0, copy[base + DECIDED]));
+
+            return new ModelState(copy, net, breaks, attempts, this, action, to, msg);
+        }
+
+        switch (type(msg)) {
+            case collect:
+                if (r1 >= copy[base + COMMIT]) {
+                    net = add(net, pack(last, to, from, r1, copy[base + LAST_ROUND], copy[base + LAST_VALUE]));
+                    copy[base + COMMIT] = r1;
+                } else
+                    net = add(net, pack(oldRound, to, from, r1, copy[base + COMMIT], 0));
+                break;
+
+            case begin:
+                if (r1 >= copy[base + COMMIT]) {
+                    net = add(net, pack(accept, to, from, r1, 0, 0));
+                    copy[base + LAST_ROUND] = r1;
+                    copy[base + LAST_VALUE] = value(msg);
+                } else
+                    net = add(net, pack(oldRound, to, from, r1, copy[base + COMMIT], 0));
+                break;
+
+            case last:
+                // the answers to the collect of an older round are consumed, but don't count (as in [Node.lastStep])
+                if (r1 != copy[base + ROUND])
+                    break;
+
+                copy[base + VOTES] |= 1 << from;
+
+                // as the leader does, the value accepted in the biggest round
+                if (r2(msg) >= copy[base + PROPOSED_ROUND]) {
+                    copy[base + PROPOSED_ROUND] = r2(msg);
+                    copy[base + PROPOSED] = value(msg);
+                }
+
+                if (explorer.isPhase1Quorum(copy[base + VOTES])) {
+                    copy[base + PHASE] = PHASE_2;
+                    copy[base + VOTES] = 0;
+
+                    for (int node = 0; node < n; ++node)
+                        net = add(net, pack(begin, to, node, copy[base + ROUND], 0, copy[base + PROPOSED]));
+                }
+                break;
+
+            case accept:
+                if (r1 != copy[base + ROUND])
+                    break;
+
+                copy[base + VOTES] |= 1 << from;
+
+                if (explorer.isPhase2Quorum(copy[base + VOTES]))
+                    net = decide(copy, net, to, copy[base + PROPOSED]);
+                break;
+
+            case oldRound:
+                copy[base + PHASE] = VOTER;
+                break;
+
+            case preVote:
+                if (r1 >= copy[base + COMMIT])
+                    net = add(net, pack(preVoteGranted, to, from, r1, 0, 0));
+                break;
+
+            case preVoteGranted:
+                if (r1 == copy[base + PROPOSAL])
+                    copy[base + VOTES] |= 1 << from;
+
+                // the round is started as [Node.startCollect] does, from the rounds known now
+                if (explorer.isPhase1Quorum(copy[base + VOTES]))
+                    net = collect(copy, net, to, nextRound(copy, to, n), n);
+                break;
+
+            case success:
+                net = decide(copy, net, to, value(msg));
+                break;
+
+            default:
+                throw new IllegalStateException("unexpected message in the model: " + type(msg));
+        }
+
+        return new ModelState(copy, net, breaks, attempts, this, action, to, msg);
+    }
+
+    /** [rank] decides [value], and spreads the [success] (to the learners too) */
+    private static long[] decide(int[] nodes, long[] net, int rank, int value) {
+        nodes[rank * FIELDS + DECIDED] = value;
+        nodes[rank * FIELDS + PHASE] = VOTER;
+
+        for (int node = 0; node < nodes.length / FIELDS; ++node) {
+            if (node != rank)
+                net = add(net, pack(success, rank, node, 0, 0, value));
+        }
+
+        return net;
+    }
+
+    /** as [Node.nextRound] */
+    private static int nextRound(int[] nodes, int rank, int n) {
+        final int round = nodes[rank * FIELDS + ROUND];
+        final int lastRound = nodes[rank * FIELDS + LAST_ROUND];
+
+        if (lastRound >= round)
+            return (lastRound / n + 1) * n + rank;
+
+        return (round / n + 1) * n + rank;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Invariants
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** returns the violated property (agreement or validity), or null */
+    String violation(@NotNull Explorer explorer) {
+        int decided = -1;
+
+        for (int rank = 0; rank < nodes.length / FIELDS; ++rank) {
+            final int value = decided(rank);
+
+            if (value < 0)
+                continue;
+
+            if (!explorer.isProposed(value))
+                return String.format("validity: node %d decided %d, never proposed", rank, value);
+
+            if (decided >= 0 && value != decided)
+                return String.format("agreement: node %d decided %d, but %d was already decided", rank, value, decided);
+
+            decided = value;
+        }
+
+        return null;
+    }
+
+    /** 64-bit fingerprint of the nodes, the network and the counters */
+    long fingerprint() {
+        long hash = 0x9E3779B97F4A7C15L * (breaks + 1) + attempts;
+
+        for (int field: nodes)
+            hash = mix(hash ^ field);
+
+        for (long msg: network)
+            hash = mix(hash ^ msg);
+
+        return mix(hash ^ network.length);
+    }
+
+    /** the transitions that led to this state, from the initial one */
+    List<String> trace(@NotNull Explorer explorer) {
+        final List<String> steps = new ArrayList<>();
+
+        for (ModelState state = this; state.parent != null; state = state.parent)
+            steps.add(state.describe(explorer));
+
+        Collections.reverse(steps);
+        return steps;
+    }
+
+    private String describe(Explorer explorer) {
+        switch (action) {
+            case TIMEOUT:
+                if (phase(actor) == PRE_VOTE)
+                    return String.format("Node-%d times out, pre-vote for round %s", actor, round(explorer, nodes[actor * FIELDS + PROPOSAL]));
+
+                return String.format("Node-%d times out, starts round %s", actor, round(explorer, nodes[actor * FIELDS + ROUND]));
+            case BREAK:     return String.format("Node-%d breaks (memory reset)", actor);
+            case DELIVER:   return "deliver " + describe(explorer, message);
+            case DUPLICATE: return "deliver (keeping a duplicate) " + describe(explorer, message);
+            case LOSE:      return "lose " + describe(explorer, message);
+            default:        return "initial state";
+        }
+    }
+
+    private static String describe(Explorer explorer, long msg) {
+        return String.format("%s from %d to %d [r1: %s, r2: %s, value: %d]", type(msg), from(msg), to(msg),
+                round(explorer, r1(msg)), round(explorer, r2(msg)), value(msg));
+    }
+
+    private static String round(Explorer explorer, int round) {
+        return String.format("(%d, %d)", round / explorer.size(), round % explorer.size());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Utilities
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private int phase(int rank) {
+        return nodes[rank * FIELDS + PHASE];
+    }
+
+    private int decided(int rank) {
+        return nodes[rank * FIELDS + DECIDED];
+    }
+
+    /** a message as: type (4 bits), from (4), to (4), r1 (12), r2 (12), value (8) */
+    private static long pack(Message.Type type, int from, int to, int r1, int r2, int value) {
+        return ((long) type.ordinal() << 40) | ((long) from << 36) | ((long) to << 32)
+                | ((long) r1 << 20) | ((long) r2 << 8) | value;
+    }
+
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    private static Message.Type type(long msg) { return TYPES[(int) (msg >>> 40) & 0xF]; }
+    private static int from(long msg)  { return (int) (msg >>> 36) & 0xF; }
+    private static int to(long msg)    { return (int) (msg >>> 32) & 0xF; }
+    private static int r1(long msg)    { return (int) (msg >>> 20) & 0xFFF; }
+    private static int r2(long msg)    { return (int) (msg >>> 8) & 0xFFF; }
+    private static int value(long msg) { return (int) msg & 0xFF; }
+
+    /** the sorted set [net] plus [msg] (the same array if already there) */
+    private static long[] add(long[] net, long msg) {
+        final int i = Arrays.binarySearch(net, msg);
+
+        if (i >= 0)
+            return net;
+
+        final int at = -i - 1;
+        final long[] copy = new long[net.length + 1];
+        System.arraycopy(net, 0, copy, 0, at);
+        copy[at] = msg;
+        System.arraycopy(net, at, copy, at + 1, net.length - at);
+        return copy;
+    }
+
+    private static long[] remove(long[] net, int i) {
+        final long[] copy = new long[net.length - 1];
+        System.arraycopy(net, 0, copy, 0, i);
+        System.arraycopy(net, i + 1, copy, i, net.length - i - 1);
+        return copy;
+    }
+
+    /** 64-bit finalizer of MurmurHash3 */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,100 @@
+package com.luca.anzalone.kv;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * An (immutable) operation on the key-value store.
+ *
+ * @author Luca Anzalone
+ */
+public class Command {
+    private final int id;
+    private final Op op;
+    private final int key;
+    private final int value;
+    private final int expected;  // only for cas
+
+    public static final int MAX_SERVERS = 31;  // the members of a reconfiguration are a bit-mask
+
+
+    public Command(int id, @NotNull Op op, int key, int value, int expected) {
+        this.id  = id;
+        this.op  = op;
+        this.key = key;
+        this.value    = value;
+        this.expected = expected;
+    }
+
+    /** a membership change: the given [servers] (ids in [0, MAX_SERVERS)) become the voting configuration */
+    public static Command reconfigure(int id, @NotNull int... servers) {
+        int mask = 0;
+
+        for (int server: servers) {
+            if (server < 0 || server >= MAX_SERVERS)
+                throw new IllegalArgumentException("server id out of range: " + server);
+
+            mask |= 1 << server;
+        }
+
+        return new Command(id, Op.reconfigure, 0, mask, 0);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public int getKey() {
+        return key;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public int getExpected() {
+        return expected;
+    }
+
+    public boolean isRead() {
+        return op == Op.get;
+    }
+
+    /** the (sorted) servers of a reconfigure command */
+    public int[] getMembers() {
+        assert op == Op.reconfigure;
+
+        final int[] members = new int[Integer.bitCount(value)];
+
+        for (int server = 0, i = 0; server < MAX_SERVERS; ++server) {
+            if ((value & (1 << server)) != 0)
+                members[i++] = server;
+        }
+
+        return members;
+    }
+
+    public enum Op {
+        get,
+        put,
+        cas,  // compare-and-set: value is written only if the current one is [expected]
+        reconfigure,  // membership change (see [ReplicatedStore.reconfigure])
+    }
+
+    @Override
+    public String toString() {
+        switch (op) {
+            case get: return String.format("Command-%d [get %d]", id, key);
+            case put: return String.format("Command-%d [put %d = %d]", id, key, value);
+            case cas: return String.format("Command-%d [cas %d: %d -> %d]", id, key, expected, value);
+            case reconfigure: return String.format("Command-%d [reconfigure %s]", id, Arrays.toString(getMembers()));
+        }
+
+        return "Command-" + id;
+    }
+}
@@ -0,0 +1,47 @@
+package com.luca.anzalone.kv;
+
+import com.luca.anzalone.scenario.Scenario;
+import com.luca.anzalone.utils.Debug;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Runs the replicated key-value store with different read/write mixes (95/5 and 50/50 by default),
+ * in the environment (and cluster size) of the given scenario file, with one or more concurrent clients.
+ *
+ * Usage: scenario.properties [operations] [clients] [read ratio...]
+ *
+ * @author Luca Anzalone
+ */
+public class KeyValueBenchmark {
+    private static final int KEYS = 16;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [operations] [clients] [read ratio...]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        final int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        final int clients = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+        final double[] mixes = (args.length > 3) ? new double[args.length - 3] : new double[] {0.95, 0.50};
+
+        for (int i = 3; i < args.length; ++i)
+            mixes[i - 3] = Double.parseDouble(args[i]);
+
+        for (double readRatio: mixes) {
+            final Workload workload = new Workload(readRatio, KEYS, 42);
+            System.out.println("\n> Scenario: " + scenario.getName() + ", workload: " + workload +
+                    ", " + operations + " operations, " + clients + " clients");
+
+            scenario.apply();
+            new ReplicatedStore(scenario.getValues().length)
+                    .run(workload, operations, clients)
+                    .print();
+
+            Debug.clearExecutionsLog();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.luca.anzalone.kv;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The (deterministic) key-value state machine: each replica applies the same decided commands, in the same order.
+ * Missing keys are read as 0. A replica can be read by other threads while it applies the commands.
+ *
+ * @author Luca Anzalone
+ */
+public class KeyValueStore {
+    private final Map<Integer, Integer> data = new HashMap<>();
+    private int applied = 0;  // number of applied commands (the index of the next log slot)
+
+    public KeyValueStore() {
+    }
+
+    /** a snapshot of the given [replica]: its data, and the number of commands applied to get it */
+    public KeyValueStore(@NotNull KeyValueStore replica) {
+        synchronized (replica) {
+            data.putAll(replica.data);
+            applied = replica.applied;
+        }
+    }
+
+    /** applies [command], returning: the value for get, the previous value for put, 1 or 0 for cas */
+    public synchronized int apply(@NotNull Command command) {
+        applied++;
+
+        final int key = command.getKey();
+        final int current = data.getOrDefault(key, 0);
+
+        switch (command.getOp()) {
+            case get:
+                return current;
+
+            case put:
+                data.put(key, command.getValue());
+                return current;
+
+            case cas:
+                if (current != command.getExpected())
+                    return 0;
+
+                data.put(key, command.getValue());
+                return 1;
+
+            case reconfigure:
+                return 0;  // it only takes a slot
+        }
+
+        throw new IllegalArgumentException("unknown operation: " + command.getOp());
+    }
+
+    /** local read, without going through the log */
+    public synchronized int get(int key) {
+        return data.getOrDefault(key, 0);
+    }
+
+    /** the size of a snapshot of the replica, on the wire: a key and a value per entry, plus the applied count */
+    public synchronized int bytes() {
+        return Integer.BYTES * (2 * data.size() + 1);
+    }
+
+    public synchronized int getApplied() {
+        return applied;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        KeyValueStore store = (KeyValueStore) o;
+        return applied == store.applied && data.equals(store.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * data.hashCode() + applied;
+    }
+}
@@ -0,0 +1,119 @@
+package com.luca.anzalone.kv;
+
+import com.luca.anzalone.scenario.Scenario;
+import com.luca.anzalone.stats.Statistic;
+import com.luca.anzalone.utils.Debug;
+import com.luca.anzalone.utils.Globals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the same writes against the replicated key-value store with a growing number of learners
+ * ([Globals.LEARNERS]): while the writes go through consensus, a client per learner reads random keys from the
+ * replica of its learner, one read after the other (closed loop, no think time), while the learner node applies the
+ * decided commands to it. The write latency (decided by the voters only) is reported next to the reads actually
+ * served, their latency and how stale they were (the slots decided, but not yet applied by the learner).
+ * The clients share the cores with the simulation: on a small machine they slow the writes down.
+ *
+ * Usage: scenario.properties [writes] [learners...]
+ *
+ * @author Luca Anzalone
+ */
+public class LearnerBenchmark {
+    private static final int KEYS = 16;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [writes] [learners...]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        final int writes = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+        final int[] learners = (args.length > 2) ? new int[args.length - 2] : new int[] {0, 1, 2, 4, 8};
+
+        for (int i = 2; i < args.length; ++i)
+            learners[i - 2] = Integer.parseInt(args[i]);
+
+        final StringBuilder table = new StringBuilder("\n> Scenario: " + scenario.getName() + ", " + writes +
+                " writes\n")
+                .append(String.format("%9s %16s %10s %10s %14s %16s %14s\n", "learners", "write mean (ms)", "p50",
+                        "p99", "reads/s", "read p99 (us)", "stale (slots)"));
+
+        for (int count: learners) {
+            scenario.apply();
+            Globals.LEARNERS = count;
+
+            System.out.println("\n> Learners: " + count);
+
+            final ReplicatedStore store = new ReplicatedStore(scenario.getValues().length);
+            final Workload workload = new Workload(0, KEYS, 42);  // writes only
+            final Statistic latency = new Statistic();
+            final List<Reader> readers = new ArrayList<>();
+
+            for (int learner = 0; learner < count; ++learner)
+                readers.add(new Reader(store, learner));
+
+            final long start = System.nanoTime();
+            readers.forEach(Thread::start);
+
+            for (int i = 0; i < writes; ++i) {
+                final long begin = System.nanoTime();
+                store.submit(workload.next());
+                latency.add((System.nanoTime() - begin) / 1e6);
+            }
+
+            long reads = 0;
+            double readP99 = 0, stale = 0;
+
+            for (Reader reader: readers) {
+                reader.running = false;
+                reader.join();
+                reads += reader.latency.count();
+                readP99 = Math.max(readP99, reader.latency.p99());
+                stale += reader.staleness.mean() / readers.size();
+            }
+
+            final double seconds = (System.nanoTime() - start) / 1e9;
+
+            store.print();
+            Debug.clearExecutionsLog();
+
+            table.append(String.format("%9d %16.1f %10.1f %10.1f %14.0f %16.1f %14.2f\n", count, latency.mean(),
+                    latency.p50(), latency.p99(), reads / seconds, readP99, stale));
+        }
+
+        System.out.println(table);
+    }
+
+    /** a client reading random keys from its learner, one read at a time */
+    private static class Reader extends Thread {
+        private final ReplicatedStore store;
+        private final int learner;
+        private volatile boolean running = true;
+        private final Statistic latency = new Statistic();    // us
+        private final Statistic staleness = new Statistic();  // slots
+
+        Reader(ReplicatedStore store, int learner) {
+            super("Reader-" + learner);
+            this.store = store;
+            this.learner = learner;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                final int stale = store.staleness(learner);
+                final long start = System.nanoTime();
+
+                store.read(learner, ThreadLocalRandom.current().nextInt(KEYS));
+                latency.add((System.nanoTime() - start) / 1e3);
+                staleness.add(stale);
+            }
+        }
+    }
+}
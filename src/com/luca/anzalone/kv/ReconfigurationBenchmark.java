@@ -0,0 +1,102 @@
+package com.luca.anzalone.kv;
+
+import com.luca.anzalone.scenario.Scenario;
+import com.luca.anzalone.utils.Debug;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static com.luca.anzalone.utils.Globals.RECONFIGURATION_WINDOW;
+
+/**
+ * Runs a workload against the replicated key-value store while its membership changes: after a third of the
+ * operations two servers are added (scale out), after two thirds the two oldest servers are removed (scale in).
+ * The throughput and the latency are reported for each window of operations, to show the cost of the
+ * reconfigurations (the catch-up of the learners, and the lost lease) next to the steady state.
+ *
+ * Usage: scenario.properties [operations] [window] [read ratio]
+ *
+ * @author Luca Anzalone
+ */
+public class ReconfigurationBenchmark {
+    private static final int KEYS = 16;
+    private static final int ADDED = 2;  // servers added, then removed
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [operations] [window] [read ratio]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        final int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 300;
+        final int window     = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+        final double ratio   = (args.length > 3) ? Double.parseDouble(args[3]) : 0.5;
+        final Workload workload = new Workload(ratio, KEYS, 42);
+
+        scenario.apply();
+
+        final int nodes = scenario.getValues().length;
+        final int[] larger  = new int[nodes + ADDED];  // [0, nodes + ADDED)
+        final int[] shifted = new int[nodes];          // [ADDED, nodes + ADDED)
+
+        for (int i = 0; i < larger.length; ++i)
+            larger[i] = i;
+
+        for (int i = 0; i < nodes; ++i)
+            shifted[i] = ADDED + i;
+
+        System.out.println("\n> Scenario: " + scenario.getName() + ", workload: " + workload + ", " + operations +
+                " operations, reconfiguration window: " + RECONFIGURATION_WINDOW);
+
+        final ReplicatedStore store = new ReplicatedStore(nodes);
+        final StringBuilder table = new StringBuilder()
+                .append(String.format("%8s %12s %16s %18s   %s\n", "window", "ops/s", "latency (ms)", "members", ""));
+
+        double steadyThroughput = 0, dipThroughput = Double.MAX_VALUE;
+        int steadyWindows = 0;
+
+        for (int first = 0; first < operations; first += window) {
+            final int last = Math.min(operations, first + window);
+            final long start = System.nanoTime();
+            String event = "";
+
+            for (int op = first; op < last; ++op) {
+                if (op == operations / 3) {
+                    store.reconfigure(larger);
+                    event = "* scale out to " + Arrays.toString(larger);
+                } else if (op == 2 * operations / 3) {
+                    store.reconfigure(shifted);
+                    event = "* scale in to " + Arrays.toString(shifted);
+                }
+
+                store.submit(workload.next());
+            }
+
+            final double ms = (System.nanoTime() - start) / 1e6;
+            final double throughput = (last - first) * 1000.0 / Math.max(1e-3, ms);
+
+            if (event.isEmpty()) {
+                steadyThroughput += throughput;
+                steadyWindows++;
+            } else {
+                dipThroughput = Math.min(dipThroughput, throughput);
+            }
+
+            table.append(String.format("%8d %12.1f %16.2f %18s   %s\n", first / window, throughput,
+                    ms / (last - first), Arrays.toString(store.getMembers()), event));
+        }
+
+        store.print();
+        System.out.println(table);
+
+        if (steadyWindows > 0 && dipThroughput != Double.MAX_VALUE) {
+            steadyThroughput /= steadyWindows;
+            System.out.println(String.format("> steady: %.1f ops/s, reconfiguring: %.1f ops/s (%.0f%% dip)",
+                    steadyThroughput, dipThroughput, 100 * (1 - dipThroughput / steadyThroughput)));
+        }
+
+        Debug.clearExecutionsLog();
+    }
+}
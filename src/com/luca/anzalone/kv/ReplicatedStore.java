@@ -0,0 +1,458 @@
+package com.luca.anzalone.kv;
+
+import com.luca.anzalone.Channel;
+import com.luca.anzalone.stats.Statistic;
+import com.luca.anzalone.stats.Summary;
+import com.sun.istack.internal.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.luca.anzalone.utils.Globals.*;
+
+/**
+ * ReplicatedStore is a key-value store replicated on every server, on top of the Paxos simulation.
+ *
+ * Each slot of the log is decided by an execution of the protocol (a [Channel]), where each node proposes the
+ * command of a client (see [run]: with a single client, every node proposes the same one); each node then applies
+ * the decided command to the replica of its server, as soon as it learns it (see [Channel.onDecision]). The commands
+ * that lost the slot are proposed again in the next ones.
+ *
+ * The leader that decided the last slot holds a lease of [Globals.LEASE_TIME] ms (at most
+ * [Globals.ELECTION_TIMEOUT]), counted from the start of that slot: while it's valid, the reads are served locally
+ * by its replica, without going through consensus. Nothing stops another node from leading the next slot while the
+ * lease runs (each slot is a fresh Channel, with its own election): such a takeover is counted, and the lease moves
+ * to the new leader. So the lease doesn't make the local reads linearizable: they see every decided slot only
+ * because a slot ends once every replica has applied it.
+ *
+ * The membership changes go through the log too ([reconfigure]), as in the alpha-window reconfiguration: the
+ * configuration decided in the slot [i] is the one voting from the slot [i + Globals.RECONFIGURATION_WINDOW].
+ * A joining server first becomes a learner: it gets a snapshot of the replica of a member (a state transfer), then
+ * it's a node of the channel of each slot, out of its configuration (see [Channel.members]), so it learns and
+ * applies the decided commands as the voters do, but it votes only once the new configuration is in use. The slot
+ * of the reconfiguration is decided by joint consensus (see [Channel.reconfigure]): the new configuration agrees
+ * on it too. A change of configuration ends the lease, and the servers left out are retired.
+ *
+ * With [Globals.LEARNERS] each slot is also learnt by some non-voting nodes, each one with its own replica: they
+ * serve the reads ([read]) without consensus and without making the quorums larger, so the read capacity grows
+ * with them (as long as they have cores of their own) while the writes cost the same. Their reads are sequentially
+ * consistent, not linearizable ([staleness]).
+ *
+ * @author Luca Anzalone
+ */
+public class ReplicatedStore {
+    private static final int RECONFIGURATION_ID = 1 << 24;     // first id of the reconfigure commands
+
+    private final Map<Integer, KeyValueStore> replicas = new TreeMap<>();   // members and learners, by server id
+    private final List<KeyValueStore> readers = new ArrayList<>();         // replicas of the learner nodes
+    private final TreeMap<Integer, int[]> configurations = new TreeMap<>(); // first slot -> voting servers
+    private final List<Command> log = new ArrayList<>();
+    private volatile int decided = 0;  // slots of the log, as seen by the reading threads
+    private int leaseHolder = -1;  // server id
+    private long leaseExpiry = 0;
+    private int takeovers = 0;     // slots decided by another leader, while the lease was valid
+    private int reconfigurations = 0;
+    // statistics
+    private final Statistic readLatency  = new Statistic();  // ms
+    private final Statistic writeLatency = new Statistic();  // ms
+    private int localReads = 0;
+    private final AtomicInteger learnerReads = new AtomicInteger();
+    private final Statistic reconfigurationLatency = new Statistic();  // ms, catch-up included
+    private final Statistic catchUpLatency = new Statistic();          // ms
+    private long transferred = 0;  // bytes of the snapshots sent to the joining servers
+
+    /** a store replicated on the servers [0, nodes) */
+    public ReplicatedStore(int nodes) {
+        assert nodes > 0;
+
+        final int[] members = new int[nodes];
+
+        for (int i = 0; i < nodes; ++i) {
+            members[i] = i;
+            replicas.put(i, new KeyValueStore());
+        }
+
+        configurations.put(0, members);
+
+        for (int i = 0; i < LEARNERS; ++i)
+            readers.add(new KeyValueStore());
+    }
+
+    /** submits a [command], returning its result (see KeyValueStore.apply) */
+    public int submit(@NotNull Command command) {
+        final long start = System.nanoTime();
+        final int result;
+
+        if (isLocalRead(command)) {
+            result = localRead(command);
+        } else {
+            result = consensus(Collections.singletonList(command));
+        }
+
+        completed(command, start);
+        return result;
+    }
+
+    /** runs [operations] commands generated by the [workload], submitted by a single client */
+    public ReplicatedStore run(@NotNull Workload workload, int operations) {
+        return run(workload, operations, 1);
+    }
+
+    /**
+     * Runs [operations] commands generated by the [workload], submitted by [clients] concurrent clients: each one
+     * has a command in flight, and the servers propose different ones (the first server the oldest one, so that a
+     * stable leader doesn't starve the others). A slot decides one of them, the others wait for the next slots
+     * (their latency counts the slots lost).
+     */
+    public ReplicatedStore run(@NotNull Workload workload, int operations, int clients) {
+        if (clients <= 0)
+            throw new IllegalArgumentException("at least one client is needed: " + clients);
+
+        final Command[] inFlight = new Command[clients];
+        final long[] issued = new long[clients];
+        int submitted = 0;
+
+        for (int client = 0; client < clients && submitted < operations; ++client, ++submitted) {
+            inFlight[client] = workload.next();
+            issued[client] = System.nanoTime();
+        }
+
+        while (true) {
+            final List<Integer> waiting = new ArrayList<>();  // clients, the oldest command first
+
+            for (int client = 0; client < clients; ++client) {
+                if (inFlight[client] != null && isLocalRead(inFlight[client])) {
+                    localRead(inFlight[client]);
+                    completed(inFlight[client], issued[client]);
+                    inFlight[client] = null;
+                } else if (inFlight[client] != null) {
+                    waiting.add(client);
+                }
+            }
+
+            waiting.sort(Comparator.comparingLong(client -> issued[client]));
+            final List<Command> commands = new ArrayList<>();
+
+            for (int client: waiting)
+                commands.add(inFlight[client]);
+
+            if (!commands.isEmpty())
+                consensus(commands);
+
+            final Command decided = commands.isEmpty() ? null : log.get(log.size() - 1);
+            boolean idle = true;
+
+            for (int client = 0; client < clients; ++client) {
+                if (decided != null && inFlight[client] == decided) {
+                    completed(decided, issued[client]);
+                    inFlight[client] = null;
+                }
+
+                if (inFlight[client] == null && submitted < operations) {
+                    inFlight[client] = workload.next();
+                    issued[client] = System.nanoTime();
+                    submitted++;
+                }
+
+                idle &= inFlight[client] == null;
+            }
+
+            if (idle)
+                return this;
+        }
+    }
+
+    private boolean isLocalRead(@NotNull Command command) {
+        return command.isRead() && System.currentTimeMillis() < leaseExpiry;
+    }
+
+    /** a read served by the replica of the last leader, without consensus */
+    private int localRead(@NotNull Command command) {
+        localReads++;
+        return replicas.get(leaseHolder).get(command.getKey());
+    }
+
+    /** the [command], submitted at [start] (ns), has been served */
+    private void completed(@NotNull Command command, long start) {
+        final double elapsed = (System.nanoTime() - start) / 1e6;
+
+        if (command.isRead()) {
+            readLatency.add(elapsed);
+        } else {
+            writeLatency.add(elapsed);
+        }
+    }
+
+    /**
+     * A read served by the replica of the given [learner] (see [Globals.LEARNERS]), without consensus nor lease:
+     * it may miss the slots not yet learnt. It can be called by other threads, while the log grows.
+     */
+    public int read(int learner, int key) {
+        if (learner < 0 || learner >= readers.size())
+            throw new IllegalArgumentException("no such learner: " + learner);
+
+        learnerReads.incrementAndGet();
+        return readers.get(learner).get(key);
+    }
+
+    /** the slots decided but not yet applied by the replica of the given [learner]: how stale its reads are */
+    public int staleness(int learner) {
+        if (learner < 0 || learner >= readers.size())
+            throw new IllegalArgumentException("no such learner: " + learner);
+
+        return Math.max(0, decided - readers.get(learner).getApplied());
+    }
+
+    /**
+     * Changes the voting configuration to the given [servers]: the new ones join as learners, catching up with the
+     * log, then the new configuration is decided by the current one. Returns the slot of the reconfiguration.
+     */
+    public int reconfigure(@NotNull int... servers) {
+        if (servers.length == 0)
+            throw new IllegalArgumentException("a configuration needs at least one server");
+
+        QUORUM.validate(servers.length);
+
+        final long start = System.nanoTime();
+
+        for (int server: servers) {
+            if (!replicas.containsKey(server))
+                catchUp(server);
+        }
+
+        final Command command = Command.reconfigure(RECONFIGURATION_ID + reconfigurations++, servers);
+        final int slot = log.size();
+        consensus(Collections.singletonList(command));
+
+        reconfigurationLatency.add((System.nanoTime() - start) / 1e6);
+        return slot;
+    }
+
+    /**
+     * State transfer: the new replica of [server] (a learner) is a snapshot of the replica of a member, instead of
+     * the replay of the whole log. The next slots it learns as a node of their channels (see [participants]).
+     */
+    private void catchUp(int server) {
+        final long start = System.nanoTime();
+        final KeyValueStore source = replicas.get(getMembers()[0]);
+        final KeyValueStore replica = new KeyValueStore(source);
+
+        if (replica.getApplied() != log.size())
+            throw new IllegalStateException("the snapshot of a member misses some slots: " + replica.getApplied());
+
+        replicas.put(server, replica);
+        transferred += replica.bytes();
+        catchUpLatency.add((System.nanoTime() - start) / 1e6);
+    }
+
+    /** the servers voting in the given [slot] */
+    private int[] configurationAt(int slot) {
+        return configurations.floorEntry(slot).getValue();
+    }
+
+    /**
+     * The replicas of the servers that won't vote anymore (in this slot, or later) are dropped: the configurations
+     * decided but not yet in use must be known, or the joining servers would be dropped too.
+     */
+    private void retire(int slot) {
+        final Iterator<Integer> servers = replicas.keySet().iterator();
+
+        while (servers.hasNext()) {
+            final int server = servers.next();
+            boolean needed = false;
+
+            for (int[] configuration: configurations.tailMap(configurations.floorKey(slot), true).values())
+                needed |= Arrays.stream(configuration).anyMatch(id -> id == server);
+
+            if (!needed)
+                servers.remove();
+        }
+    }
+
+    /**
+     * The servers of the channel deciding the [slot]: the voting ones first, then the ones joining (of the next
+     * configurations, and of the [command] if it's a reconfiguration), each one with its replica.
+     */
+    private int[] participants(int slot, @NotNull Command command) {
+        final Set<Integer> servers = new LinkedHashSet<>();
+
+        for (int server: configurationAt(slot))
+            servers.add(server);
+
+        for (int[] configuration: configurations.tailMap(slot, false).values()) {
+            for (int server: configuration)
+                servers.add(server);
+        }
+
+        if (command.getOp() == Command.Op.reconfigure) {
+            for (int server: command.getMembers())
+                servers.add(server);
+        }
+
+        return servers.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** the ranks, in a channel of the given [servers], of the [configuration] */
+    private static int[] ranks(@NotNull int[] servers, @NotNull int[] configuration) {
+        final int[] ranks = new int[configuration.length];
+
+        for (int i = 0; i < configuration.length; ++i) {
+            final int server = configuration[i];
+            ranks[i] = IntStream.range(0, servers.length).filter(rank -> servers[rank] == server).findFirst()
+                    .orElseThrow(() -> new IllegalStateException("server " + server + " has no replica"));
+        }
+
+        return ranks;
+    }
+
+    /**
+     * Decides the next slot of the log, and applies it to every replica: the servers propose the [commands] (the first
+     * server the first command, and so on, round-robin). A reconfiguration is proposed alone, since its slot is
+     * decided by joint consensus. Returns the result of the decided command, the last one of the log.
+     */
+    private int consensus(@NotNull List<Command> commands) {
+        final long slotStart = System.currentTimeMillis();
+        final Command first = commands.get(0);
+        final Map<Integer, Command> proposed = new HashMap<>();
+
+        for (Command command: commands) {
+            if (command.getOp() == Command.Op.reconfigure && commands.size() > 1)
+                throw new IllegalArgumentException("a reconfiguration is proposed alone: " + commands);
+
+            proposed.put(command.getId(), command);
+        }
+
+        final int slot = log.size();
+        final int[] voters = configurationAt(slot);
+        final int[] servers = participants(slot, first);
+        final int[] proposals = new int[servers.length];
+        final int[] results = new int[servers.length];
+
+        for (int rank = 0; rank < servers.length; ++rank)
+            proposals[rank] = commands.get(rank % commands.size()).getId();
+
+        final Channel channel = new Channel(proposals);
+
+        if (channel.getLearners() != readers.size())
+            throw new IllegalStateException("Globals.LEARNERS changed: " + readers.size() + " learner replicas");
+
+        // the joining servers follow the slot without voting, while the reconfiguration is voted by both
+        if (servers.length > voters.length)
+            channel.members(ranks(servers, voters));
+
+        if (first.getOp() == Command.Op.reconfigure)
+            channel.reconfigure(ranks(servers, first.getMembers()));
+
+        // each node applies the decided command (the value is its id) to its own replica
+        channel.onDecision((rank, value) -> {
+            final Command command = proposed.get(value);
+
+            if (channel.isLearner(rank))
+                readers.get(rank - servers.length).apply(command);
+            else
+                results[rank] = replicas.get(servers[rank]).apply(command);
+        }).launch();
+
+        final Summary[] outcome = new Summary[1];
+
+        channel.onTermination(ch -> {
+            ch.summary.finishTime();
+            outcome[0] = ch.summary;
+        });
+
+        final Summary summary = outcome[0];
+        final Map<Integer, Integer> decisions = summary.getDecisions();
+        final Set<Integer> values = new HashSet<>(decisions.values());
+
+        if (decisions.size() != channel.totalSize() || values.size() != 1 || !proposed.keySet().containsAll(values))
+            throw new IllegalStateException("slot " + slot + " not decided by every node: " + decisions);
+
+        final Command command = proposed.get(values.iterator().next());
+        log.add(command);
+        decided = log.size();
+
+        if (command.getOp() == Command.Op.reconfigure)
+            configurations.put(slot + Math.max(1, RECONFIGURATION_WINDOW), command.getMembers());
+
+        retire(slot + 1);
+
+        // another leader decided the slot while the lease was valid: it takes the lease over
+        if (summary.leader >= 0 && slotStart < leaseExpiry && servers[summary.leader] != leaseHolder)
+            takeovers++;
+
+        // the deciding leader gets the lease, unless the next slot is voted by another configuration
+        if (summary.leader >= 0 && configurationAt(slot + 1) == voters) {
+            leaseHolder = servers[summary.leader];
+            leaseExpiry = slotStart + Math.min(LEASE_TIME, ELECTION_TIMEOUT);
+        } else {
+            leaseExpiry = 0;
+        }
+
+        return results[Math.max(0, summary.leader)];
+    }
+
+    /** the servers voting in the next slot */
+    public int[] getMembers() {
+        return configurationAt(log.size()).clone();
+    }
+
+    /** the servers with a replica that don't vote (yet) */
+    public List<Integer> getLearners() {
+        final List<Integer> learners = new ArrayList<>(replicas.keySet());
+
+        for (int member: configurationAt(log.size()))
+            learners.remove((Integer) member);
+
+        return learners;
+    }
+
+    public List<Command> getLog() {
+        return log;
+    }
+
+    /** the replica of the given [server] (null if it hasn't one) */
+    public KeyValueStore getReplica(int server) {
+        return replicas.get(server);
+    }
+
+    /** the number of learner replicas (see [read]) */
+    public int getReaders() {
+        return readers.size();
+    }
+
+    public void print() {
+        System.out.println(this);
+    }
+
+    @Override
+    public String toString() {
+        final int reads  = (int) readLatency.count();
+        final int writes = (int) writeLatency.count();
+
+        return "ReplicatedStore [\n\t" +
+                "> Log: " + log.size() + " slots, " + replicas.size() + " replicas\n\t" +
+                "> Configuration: " + Arrays.toString(getMembers()) + ", learners: " + getLearners() + ", " +
+                reconfigurations + " reconfigurations\n\t\t" +
+                "- latency (ms): " + reconfigurationLatency + "\n\t\t" +
+                "- catch-up (ms): " + catchUpLatency + ", snapshots: " + transferred + " bytes\n\t" +
+                "> Reads: " + reads + " (" + localReads + " served locally under lease, " + takeovers +
+                " lease takeovers)\n\t\t" +
+                "- by the learners: " + learnerReads + " (" + readers.size() + " learners)\n\t\t" +
+                "- latency (ms): " + readLatency + "\n\t" +
+                "> Writes: " + writes + "\n\t\t" +
+                "- latency (ms): " + writeLatency + "\n" +
+                "]";
+    }
+}
@@ -0,0 +1,50 @@
+package com.luca.anzalone.kv;
+
+import java.util.Random;
+
+/**
+ * Workload generates the operations submitted by the clients:
+ * a fraction [readRatio] of get, the rest are writes (one out of [CAS_RATIO] is a cas, the others are put).
+ *
+ * @author Luca Anzalone
+ */
+public class Workload {
+    private static final int CAS_RATIO = 5;
+
+    private final double readRatio;
+    private final int keys;
+    private final Random generator;
+    private int nextId = 0;
+
+    public Workload(double readRatio, int keys, long seed) {
+        assert readRatio >= 0 && readRatio <= 1;
+        assert keys > 0;
+
+        this.readRatio = readRatio;
+        this.keys = keys;
+        this.generator = new Random(seed);
+    }
+
+    public Command next() {
+        final int id  = nextId++;
+        final int key = generator.nextInt(keys);
+
+        if (generator.nextDouble() < readRatio)
+            return new Command(id, Command.Op.get, key, 0, 0);
+
+        if (generator.nextInt(CAS_RATIO) == 0)
+            return new Command(id, Command.Op.cas, key, generator.nextInt(100), generator.nextInt(3));
+
+        return new Command(id, Command.Op.put, key, generator.nextInt(100), 0);
+    }
+
+    public double getReadRatio() {
+        return readRatio;
+    }
+
+    @Override
+    public String toString() {
+        final int reads = (int) Math.round(readRatio * 100);
+        return String.format("%d/%d (reads/writes), %d keys", reads, 100 - reads, keys);
+    }
+}
@@ -0,0 +1,78 @@
+package com.luca.anzalone.network;
+
+import com.sun.istack.internal.NotNull;
+
+/**
+ * Receiver-side duplicate suppression: for each sender, the highest sequence number seen plus a bitmap of the
+ * [WINDOW] sequence numbers below it (a sliding window, as the anti-replay window of IPsec).
+ * The state is allocated once (two arrays), so checking a message allocates nothing.
+ *
+ * A sequence number older than the window can't be told apart from a new message, so it's accepted:
+ * the protocol tolerates duplicates, the window only cuts the traffic they cause.
+ *
+ * @author Luca Anzalone
+ */
+public class DedupWindow {
+    public static final int WINDOW = Long.SIZE;
+
+    private final long[] highest;  // highest sequence number received from each sender
+    private final long[] seen;     // bit i: (highest - i) has been received
+    private int suppressed;
+
+
+    public DedupWindow(int senders) {
+        highest = new long[senders];
+        seen = new long[senders];
+    }
+
+    /** returns true if the message [seq] from [sender] is new (a sequence number <= 0 is never suppressed) */
+    public synchronized boolean accept(int sender, long seq) {
+        if (seq <= 0)
+            return true;
+
+        final long top = highest[sender];
+
+        if (seq > top) {
+            final long shift = seq - top;
+            seen[sender] = (shift >= WINDOW) ? 1L : (seen[sender] << shift) | 1L;
+            highest[sender] = seq;
+            return true;
+        }
+
+        final long offset = top - seq;
+
+        if (offset >= WINDOW)
+            return true;  // too old to tell
+
+        final long bit = 1L << offset;
+
+        if ((seen[sender] & bit) != 0) {
+            suppressed++;
+            return false;
+        }
+
+        seen[sender] |= bit;
+        return true;
+    }
+
+    /** copies the state of [other] (e.g. from a snapshot) */
+    public synchronized void restore(@NotNull DedupWindow other) {
+        synchronized (other) {
+            System.arraycopy(other.highest, 0, highest, 0, highest.length);
+            System.arraycopy(other.seen, 0, seen, 0, seen.length);
+        }
+    }
+
+    /** forgets every sender (e.g. when the node is repaired) */
+    public synchronized void reset() {
+        for (int i = 0; i < highest.length; ++i) {
+            highest[i] = 0;
+            seen[i] = 0;
+        }
+    }
+
+    /** number of duplicates dropped */
+    public synchronized int getSuppressed() {
+        return suppressed;
+    }
+}
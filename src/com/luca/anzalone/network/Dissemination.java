@@ -0,0 +1,69 @@
+package com.luca.anzalone.network;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * How a decision ([success]) is spread among the nodes of a channel: each node that learns it sends it to the
+ * [targets] of this strategy, once.
+ *   - flood: to every other node, N^2 messages in total (but the most redundant against the lost ones);
+ *   - tree: to its [fanout] children in the spanning tree rooted at the deciding node (the heap layout: the node at
+ *     position i, counted from the root, has the children at i * fanout + 1 ... i * fanout + fanout), N - 1 messages
+ *     in log_fanout(N) hops, but a lost message cuts off a whole subtree;
+ *   - gossip: to [fanout] random nodes (push), about N * fanout messages, reaching every node with high
+ *     probability when [fanout] is about ln(N).
+ * The nodes missed by the tree or the gossip pull the decision from a random node (see [Node]).
+ *
+ * @author Luca Anzalone
+ */
+public enum Dissemination {
+    flood,
+    tree,
+    gossip;
+
+    /**
+     * The nodes (out of [nodes]) the node [rank] spreads the decision to, once learned: [root] is the rank of the
+     * deciding node (the root of the tree), [random] picks the gossip peers.
+     */
+    public List<Integer> targets(int rank, int root, int nodes, int fanout, @NotNull Random random) {
+        assert fanout > 0;
+
+        final List<Integer> targets = new ArrayList<>();
+
+        switch (this) {
+            case flood:
+                for (int node = 0; node < nodes; ++node) {
+                    if (node != rank)
+                        targets.add(node);
+                }
+                break;
+
+            case tree:
+                final int position = Math.floorMod(rank - root, nodes);
+
+                for (int child = position * fanout + 1; child <= position * fanout + fanout && child < nodes; ++child)
+                    targets.add(Math.floorMod(root + child, nodes));
+                break;
+
+            case gossip:
+                // a partial Fisher-Yates shuffle of the other nodes: [fanout] distinct peers
+                final int[] peers = new int[nodes - 1];
+
+                for (int i = 0; i < peers.length; ++i)
+                    peers[i] = (i < rank) ? i : i + 1;
+
+                for (int i = 0; i < Math.min(fanout, peers.length); ++i) {
+                    final int j = i + random.nextInt(peers.length - i);
+                    final int peer = peers[j];
+                    peers[j] = peers[i];
+                    targets.add(peer);
+                }
+                break;
+        }
+
+        return targets;
+    }
+}
@@ -0,0 +1,143 @@
+package com.luca.anzalone.network;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import static com.luca.anzalone.utils.Globals.*;
+
+/**
+ * FailureDetector is a gossip-style heartbeat failure detector, with adaptive timeouts.
+ *
+ * Every [Globals.HEARTBEAT_INTERVAL] ms a node increases its own heartbeat counter and sends the whole vector
+ * of known counters to a single random peer, so the cluster exchanges O(N) messages per interval.
+ * A node is considered alive as long as its counter keeps increasing: the allowed silence is estimated,
+ * for each node, from the mean and deviation of the intervals between two increases (mean + 4 * deviation).
+ * Any other message received from a node is a proof of life too ([heard]): it restarts the allowed silence, without
+ * changing the estimated interval between the heartbeats.
+ *
+ * @author Luca Anzalone
+ */
+public class FailureDetector {
+    private final int rank;
+    private final int[] counters;       // highest heartbeat counter known for each node
+    private final long[] lastUpdate;    // (local) time of the last increase of each counter
+    private final long[] lastHeard;     // (local) time of the last message received from each node
+    private final float[] mean;         // EWMA of the intervals between two increases
+    private final float[] deviation;    // EWMA of the deviation of such intervals
+    private final boolean[] suspected;
+    private long nextBeat;
+
+    public FailureDetector(int rank, int size) {
+        this.rank = rank;
+        this.counters   = new int[size];
+        this.lastUpdate = new long[size];
+        this.lastHeard  = new long[size];
+        this.mean       = new float[size];
+        this.deviation  = new float[size];
+        this.suspected  = new boolean[size];
+    }
+
+    /** forgets everything: all nodes are trusted for (at least) a timeout from [now] */
+    public synchronized void reset(long now) {
+        Arrays.fill(lastUpdate, now);
+        Arrays.fill(lastHeard, now);
+        Arrays.fill(mean, HEARTBEAT_INTERVAL);
+        Arrays.fill(deviation, HEARTBEAT_INTERVAL);
+        Arrays.fill(suspected, false);
+        nextBeat = now;
+    }
+
+    /** copies the state of [other] (e.g. from a snapshot), moving its times forward by [shift] ms */
+    public synchronized void restore(@NotNull FailureDetector other, long shift) {
+        synchronized (other) {
+            System.arraycopy(other.counters, 0, counters, 0, counters.length);
+            System.arraycopy(other.mean, 0, mean, 0, mean.length);
+            System.arraycopy(other.deviation, 0, deviation, 0, deviation.length);
+            System.arraycopy(other.suspected, 0, suspected, 0, suspected.length);
+
+            for (int node = 0; node < lastUpdate.length; ++node) {
+                lastUpdate[node] = other.lastUpdate[node] + shift;
+                lastHeard[node]  = other.lastHeard[node] + shift;
+            }
+
+            nextBeat = other.nextBeat + shift;
+        }
+    }
+
+    /** whether it's time to send the next heartbeat */
+    public synchronized boolean shouldBeat(long now) {
+        return now >= nextBeat;
+    }
+
+    /** increases the own counter, and returns a snapshot of the counters to gossip */
+    public synchronized int[] beat(long now) {
+        counters[rank]++;
+        lastUpdate[rank] = now;
+        nextBeat = now + HEARTBEAT_INTERVAL;
+        return counters.clone();
+    }
+
+    /** merges the counters received from a peer */
+    public synchronized void merge(@NotNull int[] remote, long now) {
+        for (int node = 0; node < counters.length; ++node) {
+            if (remote[node] > counters[node]) {
+                counters[node] = remote[node];
+                increased(node, now);
+            }
+        }
+    }
+
+    /** any message received from [node] is a proof of life */
+    public synchronized void heard(int node, long now) {
+        lastHeard[node] = Math.max(lastHeard[node], now);
+        suspected[node] = false;
+    }
+
+    /** the heartbeat counter of [node] increased: a sample of the interval between its heartbeats */
+    private void increased(int node, long now) {
+        final float interval = now - lastUpdate[node];
+        final float error = interval - mean[node];
+
+        // Jacobson-like estimation of the interval between heartbeats
+        mean[node] += error / 8f;
+        deviation[node] += (Math.abs(error) - deviation[node]) / 4f;
+        lastUpdate[node] = now;
+        lastHeard[node]  = Math.max(lastHeard[node], now);
+        suspected[node] = false;
+    }
+
+    /**
+     * Updates the [alive] set according to the current view,
+     * [onSuspect] is called for the nodes that start being suspected.
+     */
+    public synchronized void update(@NotNull Set<Integer> alive, long now, @NotNull IntConsumer onSuspect) {
+        for (int node = 0; node < counters.length; ++node) {
+            if (isAlive(node, now)) {
+                alive.add(node);
+            } else {
+                alive.remove(node);
+
+                if (!suspected[node]) {
+                    suspected[node] = true;
+                    onSuspect.accept(node);
+                }
+            }
+        }
+    }
+
+    /** whether [node] is trusted at time [now] */
+    public synchronized boolean isAlive(int node, long now) {
+        return node == rank || now - lastHeard[node] <= timeout(node);
+    }
+
+    /** the adaptive timeout of [node], clamped in [2 * HEARTBEAT_INTERVAL, ELECTION_TIMEOUT] */
+    private long timeout(int node) {
+        final long estimate = (long) (mean[node] + 4 * deviation[node]);
+        final long max = Math.max(2L * HEARTBEAT_INTERVAL, ELECTION_TIMEOUT);
+
+        return Math.min(max, Math.max(2L * HEARTBEAT_INTERVAL, estimate));
+    }
+}
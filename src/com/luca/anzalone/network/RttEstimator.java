@@ -0,0 +1,189 @@
+package com.luca.anzalone.network;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Per-peer round-trip time estimation (Jacobson/Karels, as the retransmission timer of TCP, RFC 6298): a smoothed
+ * RTT and its mean deviation, updated by each sample of a request/response pair, give the timeout of a peer as
+ * `srtt + 4 * rttvar`, clamped to [[min], [max]]. A peer without samples has the [initial] timeout.
+ * The samples come from the [requested] broadcasts and their [responded] answers, the first one of each peer
+ * (a request is sent once, so a response is never ambiguous, as the retransmissions of TCP are). As in TCP, every
+ * wait that [expired] without the response of a peer doubles its timeout, until its next sample.
+ *
+ * The timeout of a quorum ([timeout]) is the one of the fastest peers that, together with the node itself,
+ * form a quorum: the slower peers don't delay the others.
+ *
+ * @author Luca Anzalone
+ */
+public class RttEstimator {
+    private static final double ALPHA = 1 / 8.0;  // gain of the smoothed RTT
+    private static final double BETA  = 1 / 4.0;  // gain of the deviation
+    private static final int K = 4;
+    private static final int MAX_BACKOFF = 6;     // at most 2^6 times the estimate
+    private static final int MAX_REQUESTS = 16;   // requests remembered, waiting for their responses
+
+    private final double[] srtt;    // smoothed RTT (ms) of each peer
+    private final double[] rttvar;  // mean deviation (ms) of each peer
+    private final boolean[] sampled;
+    private final int[] backoff;    // doublings of the timeout of each peer, since its last sample
+    private final long initial;
+    private final long min;
+    private final long max;
+    private int samples;
+    private long changes;  // of the estimates: samples, expired waits and resets
+    private final Map<Object, Request> requests = new LinkedHashMap<Object, Request>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Request> eldest) {
+            return size() > MAX_REQUESTS;
+        }
+    };
+
+
+    public RttEstimator(int peers, long initial, long min, long max) {
+        assert peers > 0;
+        assert min <= max;
+
+        this.srtt    = new double[peers];
+        this.rttvar  = new double[peers];
+        this.sampled = new boolean[peers];
+        this.backoff = new int[peers];
+        this.initial = initial;
+        this.min = min;
+        this.max = max;
+    }
+
+    /** the request [key] has been sent (to every peer) at [time] */
+    public synchronized void requested(@NotNull Object key, long time) {
+        requests.put(key, new Request(time));
+    }
+
+    /** [peer] answered the request [key] at [time]: the first answer is a sample (unknown requests are ignored) */
+    public synchronized void responded(int peer, @NotNull Object key, long time) {
+        final Request request = requests.get(key);
+
+        if (request == null || request.answered.get(peer))
+            return;
+
+        request.answered.set(peer);
+        sample(peer, time - request.time);
+    }
+
+    /** a response of [peer] came [rtt] ms after the request */
+    public synchronized void sample(int peer, long rtt) {
+        if (!sampled[peer]) {
+            srtt[peer]   = rtt;
+            rttvar[peer] = rtt / 2.0;
+            sampled[peer] = true;
+        } else {
+            rttvar[peer] = (1 - BETA) * rttvar[peer] + BETA * Math.abs(srtt[peer] - rtt);
+            srtt[peer]   = (1 - ALPHA) * srtt[peer] + ALPHA * rtt;
+        }
+
+        backoff[peer] = 0;
+        samples++;
+        changes++;
+    }
+
+    /** a wait for a response of [peer] ended without it */
+    public synchronized void expired(int peer) {
+        backoff[peer] = Math.min(MAX_BACKOFF, backoff[peer] + 1);
+        changes++;
+    }
+
+    /** the time (ms) to wait for a response of [peer] */
+    public synchronized long timeout(int peer) {
+        final long rto = sampled[peer] ? Math.round(srtt[peer] + Math.max(1, K * rttvar[peer])) : initial;
+        return Math.max(min, Math.min(max, rto << backoff[peer]));
+    }
+
+    /**
+     * The time (ms) to wait for a quorum: the peers are added from the fastest one until, with [self],
+     * they satisfy [isQuorum]; the timeout is the one of the last peer added ([initial] if no quorum is reachable).
+     */
+    public synchronized long timeout(int self, @NotNull Predicate<Set<Integer>> isQuorum) {
+        final Set<Integer> voters = new TreeSet<>();
+        voters.add(self);
+
+        if (isQuorum.test(voters))
+            return min;
+
+        final boolean[] added = new boolean[srtt.length];
+        added[self] = true;
+
+        for (int i = 1; i < srtt.length; ++i) {
+            int fastest = -1;
+
+            for (int peer = 0; peer < srtt.length; ++peer) {
+                if (!added[peer] && (fastest < 0 || timeout(peer) < timeout(fastest)))
+                    fastest = peer;
+            }
+
+            added[fastest] = true;
+            voters.add(fastest);
+
+            if (isQuorum.test(voters))
+                return timeout(fastest);
+        }
+
+        return initial;
+    }
+
+    /** takes the estimates of [other] (the same peers), moving the times of its requests forward by [shift] ms */
+    public synchronized void restore(@NotNull RttEstimator other, long shift) {
+        synchronized (other) {
+            System.arraycopy(other.srtt, 0, srtt, 0, srtt.length);
+            System.arraycopy(other.rttvar, 0, rttvar, 0, rttvar.length);
+            System.arraycopy(other.sampled, 0, sampled, 0, sampled.length);
+            System.arraycopy(other.backoff, 0, backoff, 0, backoff.length);
+            samples = other.samples;
+            requests.clear();
+
+            for (Map.Entry<Object, Request> entry: other.requests.entrySet()) {
+                final Request request = new Request(entry.getValue().time + shift);
+                request.answered.or(entry.getValue().answered);
+                requests.put(entry.getKey(), request);
+            }
+        }
+
+        changes++;
+    }
+
+    /** forgets every estimate (e.g. after a restart) */
+    public synchronized void reset() {
+        Arrays.fill(sampled, false);
+        Arrays.fill(backoff, 0);
+        requests.clear();
+        changes++;
+    }
+
+    /** the smoothed RTT of [peer] (ms), or -1 if not sampled */
+    public synchronized double getSmoothed(int peer) {
+        return sampled[peer] ? srtt[peer] : -1;
+    }
+
+    public synchronized int getSamples() {
+        return samples;
+    }
+
+    /** the number of changes of the estimates: the timeouts computed before the last one may be stale */
+    public synchronized long getChanges() {
+        return changes;
+    }
+
+    private static class Request {
+        final long time;
+        final BitSet answered = new BitSet();
+
+        Request(long time) {
+            this.time = time;
+        }
+    }
+}
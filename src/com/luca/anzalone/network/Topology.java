@@ -0,0 +1,231 @@
+package com.luca.anzalone.network;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.luca.anzalone.utils.Globals.*;
+
+/**
+ * Topology is a per-link model of the network.
+ * Every directed link (from, to) has its own latency distribution, lost rate and duplication rate,
+ * all stored in flat primitive matrices (index: from * size + to) so that each message costs O(1).
+ * The matrices are allocated by the first link configured ([link], [errors], [regions]): until then every link has
+ * the parameters of [Globals], and the topology takes no memory per link, whatever its size.
+ * In addition, partitions and heals can be scheduled at given times (ms) from the start of an execution.
+ *
+ * @author Luca Anzalone
+ */
+public class Topology {
+    private final int size;
+    // the parameters of every link not configured
+    private final float defaultSpread = CHANNEL_DELAY;
+    private final float defaultLostRate = MESSAGE_LOST_RATE;
+    private final float defaultDuplicationRate = MESSAGE_DUPLICATION_RATE;
+    // per-link parameters (null until a link is configured)
+    private byte[] distribution;         // see [Distribution]
+    private float[] latency;             // constant: delay, uniform: min, log-normal: median
+    private float[] spread;              // constant: unused, uniform: max, log-normal: sigma
+    private float[] lostRate;            // lost messages every 100 units
+    private float[] duplicationRate;
+    // scheduled partitions
+    private final List<Event> events = new ArrayList<>();
+    private volatile int[] partition;    // group of each node, null when the network is connected
+    private volatile int nextEvent;
+
+    /** creates a topology of [size] nodes, where each link is initialized from the [Globals] parameters */
+    public Topology(int size) {
+        assert size > 0;
+
+        this.size = size;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Configuration
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** sets the latency distribution of the directed link (from, to) */
+    public Topology link(int from, int to, @NotNull Distribution type, float a, float b) {
+        if (distribution == null) {
+            distribution = new byte[size * size];
+            latency = new float[size * size];
+            spread  = new float[size * size];
+
+            Arrays.fill(distribution, (byte) Distribution.uniform.ordinal());
+            Arrays.fill(spread, defaultSpread);
+        }
+
+        final int i = index(from, to);
+        distribution[i] = (byte) type.ordinal();
+        latency[i] = a;
+        spread[i]  = b;
+        return this;
+    }
+
+    /** sets the latency distribution of both (from, to) and (to, from) */
+    public Topology symmetricLink(int from, int to, @NotNull Distribution type, float a, float b) {
+        link(from, to, type, a, b);
+        return link(to, from, type, a, b);
+    }
+
+    /** sets the lost and duplication rate of the directed link (from, to) */
+    public Topology errors(int from, int to, float lost, float duplication) {
+        if (lostRate == null) {
+            lostRate = new float[size * size];
+            duplicationRate = new float[size * size];
+
+            Arrays.fill(lostRate, defaultLostRate);
+            Arrays.fill(duplicationRate, defaultDuplicationRate);
+        }
+
+        final int i = index(from, to);
+        lostRate[i] = lost;
+        duplicationRate[i] = duplication;
+        return this;
+    }
+
+    /**
+     * Groups the nodes into regions (racks, data-centers, ...): [regionOf] gives the region of each node.
+     * Links inside the same region use the [local] distribution, the others use the [remote] one.
+     */
+    public Topology regions(@NotNull int[] regionOf, @NotNull Distribution local, float la, float lb,
+                            @NotNull Distribution remote, float ra, float rb) {
+        assert regionOf.length == size;
+
+        for (int from = 0; from < size; ++from) {
+            for (int to = 0; to < size; ++to) {
+                if (regionOf[from] == regionOf[to])
+                    link(from, to, local, la, lb);
+                else
+                    link(from, to, remote, ra, rb);
+            }
+        }
+
+        return this;
+    }
+
+    /** at time [atTime] (ms), the network is split into the given [groups] of nodes */
+    public Topology partitionAt(long atTime, @NotNull int[]... groups) {
+        final int[] groupOf = new int[size];
+        Arrays.fill(groupOf, -1);  // nodes not listed are isolated
+
+        for (int g = 0; g < groups.length; ++g) {
+            for (int rank: groups[g])
+                groupOf[rank] = g;
+        }
+
+        return schedule(new Event(atTime, groupOf));
+    }
+
+    /** at time [atTime] (ms), every partition is healed */
+    public Topology healAt(long atTime) {
+        return schedule(new Event(atTime, null));
+    }
+
+    private Topology schedule(Event event) {
+        events.add(event);
+        events.sort((a, b) -> Long.compare(a.time, b.time));
+        return this;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Per-message operations
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** restores the initial (connected) network, called at the start of every execution */
+    public synchronized void reset() {
+        partition = null;
+        nextEvent = 0;
+    }
+
+    /** applies the scheduled events up to [elapsed] ms from the start of the execution */
+    public void update(long elapsed) {
+        if (nextEvent >= events.size() || events.get(nextEvent).time > elapsed)
+            return;
+
+        synchronized (this) {
+            while (nextEvent < events.size() && events.get(nextEvent).time <= elapsed) {
+                partition = events.get(nextEvent).groupOf;
+                nextEvent++;
+            }
+        }
+    }
+
+    /** whether [from] and [to] are in different partitions */
+    public boolean isPartitioned(int from, int to) {
+        final int[] groups = partition;
+
+        if (groups == null)
+            return false;
+
+        return groups[from] == -1 || groups[from] != groups[to];
+    }
+
+    /** simulate an error on the link (with sudden lost of a message) */
+    public boolean isLost(int from, int to, @NotNull Random generator) {
+        final float rate = (lostRate != null) ? lostRate[index(from, to)] : defaultLostRate;
+        return generator.nextFloat() * 100f < rate;
+    }
+
+    /** simulate the duplication of a message on the link */
+    public boolean isDuplicated(int from, int to, @NotNull Random generator) {
+        final float rate = (duplicationRate != null) ? duplicationRate[index(from, to)] : defaultDuplicationRate;
+        return generator.nextFloat() * 100f < rate;
+    }
+
+    /** samples the delay (ms) needed by a message to cross the link */
+    public long delay(int from, int to, @NotNull Random generator) {
+        if (distribution == null)
+            return generator.nextInt(1 + Math.max(0, (int) defaultSpread));  // uniform in [0, CHANNEL_DELAY]
+
+        final int i = index(from, to);
+        final float a = latency[i];
+        final float b = spread[i];
+
+        switch (Distribution.values[distribution[i]]) {
+            case constant:
+                return (long) a;
+
+            case uniform:
+                return (long) a + generator.nextInt(1 + Math.max(0, (int) (b - a)));
+
+            case logNormal:
+                return Math.round(a * Math.exp(b * generator.nextGaussian()));
+        }
+
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int index(int from, int to) {
+        return from * size + to;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** latency distributions */
+    public enum Distribution {
+        constant,   // a
+        uniform,    // a + rand(0..b - a)
+        logNormal;  // median a, sigma b
+
+        private static final Distribution[] values = values();
+    }
+
+    /** a scheduled partition (or heal, when [groupOf] is null) */
+    private static class Event {
+        private final long time;
+        private final int[] groupOf;
+
+        Event(long time, int[] groupOf) {
+            this.time = time;
+            this.groupOf = groupOf;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.luca.anzalone.profiling;
+
+import com.luca.anzalone.utils.Message;
+import com.sun.istack.internal.NotNull;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.List;
+
+/**
+ * JFR event: an envelope in flight, from its dispatch to the end of its delivery (so the duration is the simulated
+ * network delay, plus the reception). It's committed by the thread delivering the envelope: a [SenderThread], or
+ * an event loop. Disabled by default, see [profiling/paxos.jfc].
+ *
+ * @author Luca Anzalone
+ */
+@Name("paxos.EnvelopeFlight")
+@Label("Envelope Flight")
+@Category({"Paxos", "Network"})
+@Description("An envelope of messages, from its dispatch to its delivery")
+@Enabled(false)
+@StackTrace(false)
+public class EnvelopeFlightEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(EnvelopeFlightEvent.class);
+
+    @Label("Sender")
+    int sender;
+
+    @Label("Receiver")
+    int receiver;
+
+    @Label("Messages")
+    int messages;
+
+    @Label("Types")
+    String types;
+
+
+    /** begins the event, or returns null (allocating nothing) if it's disabled */
+    public static EnvelopeFlightEvent dispatched(int from, int to, @NotNull List<Message> envelope) {
+        if (!TYPE.isEnabled())
+            return null;
+
+        final EnvelopeFlightEvent event = new EnvelopeFlightEvent();
+
+        event.sender = from;
+        event.receiver = to;
+        event.messages = envelope.size();
+        event.types = types(envelope);
+        event.begin();
+        return event;
+    }
+
+    /** ends and commits the event */
+    public void delivered() {
+        end();
+        commit();
+    }
+
+    private static String types(@NotNull List<Message> envelope) {
+        if (envelope.size() == 1)
+            return envelope.get(0).getType().name();
+
+        final StringBuilder sb = new StringBuilder();
+
+        for (Message message: envelope)
+            sb.append(message.getType().name()).append(' ');
+
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,63 @@
+package com.luca.anzalone.profiling;
+
+import com.luca.anzalone.utils.Message;
+import com.sun.istack.internal.NotNull;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event: a message received by a node (see [Node.receive]), with what the node did with it.
+ * Disabled by default, see [profiling/paxos.jfc].
+ *
+ * @author Luca Anzalone
+ */
+@Name("paxos.MessageReceive")
+@Label("Message Receive")
+@Category({"Paxos", "Network"})
+@Description("A message received by a node")
+@Enabled(false)
+@StackTrace(false)
+public class MessageReceiveEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(MessageReceiveEvent.class);
+
+    public enum Outcome { enqueued, duplicated, suppressed, ignored, answered }
+
+    @Label("Type")
+    String type;
+
+    @Label("Sender")
+    int sender;
+
+    @Label("Receiver")
+    int receiver;
+
+    @Label("Round")
+    String round;
+
+    @Label("Outcome")
+    @Description("enqueued, duplicated (enqueued twice), suppressed (duplicate), ignored (broken node), " +
+            "answered (with success, by a decided node)")
+    String outcome;
+
+
+    /** commits the event, if enabled (otherwise nothing is allocated, nor formatted) */
+    public static void emit(@NotNull Message message, int receiver, @NotNull Outcome outcome) {
+        if (!TYPE.isEnabled())
+            return;
+
+        final MessageReceiveEvent event = new MessageReceiveEvent();
+
+        event.type = message.getType().name();
+        event.sender = message.getSender();
+        event.receiver = receiver;
+        event.round = String.valueOf(message.getR1());
+        event.outcome = outcome.name();
+        event.commit();
+    }
+}
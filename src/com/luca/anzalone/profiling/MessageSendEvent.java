@@ -0,0 +1,59 @@
+package com.luca.anzalone.profiling;
+
+import com.luca.anzalone.utils.Message;
+import com.sun.istack.internal.NotNull;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event: a message posted on the channel by its sender (see [Channel.send] and [Channel.broadcast]).
+ * Disabled by default, see [profiling/paxos.jfc].
+ *
+ * @author Luca Anzalone
+ */
+@Name("paxos.MessageSend")
+@Label("Message Send")
+@Category({"Paxos", "Network"})
+@Description("A message posted on the channel")
+@Enabled(false)
+@StackTrace(false)
+public class MessageSendEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(MessageSendEvent.class);
+
+    @Label("Type")
+    String type;
+
+    @Label("Sender")
+    int sender;
+
+    @Label("Receiver")
+    int receiver;
+
+    @Label("Round")
+    String round;
+
+    @Label("Sequence")
+    long sequence;
+
+
+    /** commits the event, if enabled (otherwise nothing is allocated, nor formatted) */
+    public static void emit(@NotNull Message message, int to) {
+        if (!TYPE.isEnabled())
+            return;
+
+        final MessageSendEvent event = new MessageSendEvent();
+
+        event.type = message.getType().name();
+        event.sender = message.getSender();
+        event.receiver = to;
+        event.round = String.valueOf(message.getR1());
+        event.sequence = message.getSequence();
+        event.commit();
+    }
+}
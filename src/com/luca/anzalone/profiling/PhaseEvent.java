@@ -0,0 +1,68 @@
+package com.luca.anzalone.profiling;
+
+import com.luca.anzalone.utils.Round;
+import com.sun.istack.internal.NotNull;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event: the time spent by a node in a state (candidate, leader, voter or broken), from the transition into it
+ * to the next transition (or the termination of the node). A phase spans many computation steps, and it's committed
+ * by the thread running the last of them. Disabled by default, see [profiling/paxos.jfc].
+ *
+ * @author Luca Anzalone
+ */
+@Name("paxos.Phase")
+@Label("Node Phase")
+@Category({"Paxos", "Node"})
+@Description("The time spent by a node in a state")
+@Enabled(false)
+@StackTrace(false)
+public class PhaseEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(PhaseEvent.class);
+
+    @Label("Node")
+    int node;
+
+    @Label("State")
+    String state;
+
+    @Label("Round")
+    @Description("The round of the node when the phase started")
+    String round;
+
+    @Label("End Round")
+    String endRound;
+
+    @Label("Decided")
+    boolean decided;
+
+
+    /** begins the event, or returns null (allocating nothing) if it's disabled */
+    public static PhaseEvent begin(int node, @NotNull Enum<?> state, @NotNull Round round) {
+        if (!TYPE.isEnabled())
+            return null;
+
+        final PhaseEvent event = new PhaseEvent();
+
+        event.node = node;
+        event.state = state.name();
+        event.round = round.toString();
+        event.begin();
+        return event;
+    }
+
+    /** ends and commits the event */
+    public void end(@NotNull Round round, boolean decided) {
+        end();
+        this.endRound = round.toString();
+        this.decided = decided;
+        commit();
+    }
+}
@@ -0,0 +1,60 @@
+package com.luca.anzalone.profiling;
+
+import com.luca.anzalone.utils.Round;
+import com.sun.istack.internal.NotNull;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event: a node changing its state (e.g. a candidate elected leader, a leader stepping down, a node breaking).
+ * Disabled by default, see [profiling/paxos.jfc].
+ *
+ * @author Luca Anzalone
+ */
+@Name("paxos.StateTransition")
+@Label("State Transition")
+@Category({"Paxos", "Node"})
+@Description("A node changing its state")
+@Enabled(false)
+@StackTrace(false)
+public class StateTransitionEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(StateTransitionEvent.class);
+
+    @Label("Node")
+    int node;
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Round")
+    String round;
+
+    @Label("Commit")
+    String commitRound;
+
+
+    /** commits the event, if enabled (otherwise nothing is allocated, nor formatted) */
+    public static void emit(int node, @NotNull Enum<?> from, @NotNull Enum<?> to, @NotNull Round round,
+                            @NotNull Round commit) {
+        if (!TYPE.isEnabled())
+            return;
+
+        final StateTransitionEvent event = new StateTransitionEvent();
+
+        event.node = node;
+        event.from = from.name();
+        event.to = to.name();
+        event.round = round.toString();
+        event.commitRound = commit.toString();
+        event.commit();
+    }
+}
@@ -0,0 +1,126 @@
+package com.luca.anzalone.profiling;
+
+import com.luca.anzalone.utils.Message;
+import com.sun.istack.internal.NotNull;
+
+import java.util.List;
+
+/**
+ * Timeline is the trace of a single execution, written as it goes by a (shared) [TraceWriter]: the execution is a
+ * process of the trace, with a track (thread) per node.
+ * The phases of a node (candidate, leader, voter, broken) are spans of its track, while each envelope is a flow arrow
+ * from the send, on the track of the sender, to the delivery, on the track of the receiver.
+ * The lost envelopes and the decisions are instant events.
+ *
+ * @author Luca Anzalone
+ */
+public class Timeline {
+    private final TraceWriter writer;
+    private final int pid;
+
+
+    private Timeline(@NotNull TraceWriter writer, @NotNull String name, int nodes) {
+        this.writer = writer;
+        this.pid = writer.nextProcess();
+
+        writer.write(begin("M", "process_name", 0, 0).append(",\"args\":{\"name\":\"")
+                .append(name).append(" #").append(pid).append("\"}}"));
+        writer.write(begin("M", "process_sort_index", 0, 0).append(",\"args\":{\"sort_index\":")
+                .append(pid).append("}}"));
+
+        for (int node = 0; node < nodes; ++node) {
+            writer.write(begin("M", "thread_name", node, 0).append(",\"args\":{\"name\":\"Node-")
+                    .append(node).append("\"}}"));
+            writer.write(begin("M", "thread_sort_index", node, 0).append(",\"args\":{\"sort_index\":")
+                    .append(node).append("}}"));
+        }
+    }
+
+    /** the timeline of a new execution with [nodes] nodes, or null when [file] is not set (no tracing) */
+    public static Timeline open(String file, int nodes) {
+        final TraceWriter writer = TraceWriter.shared(file);
+
+        return (writer == null) ? null : new Timeline(writer, "Execution", nodes);
+    }
+
+    /** the current time-stamp (us) */
+    public long now() {
+        return writer.now();
+    }
+
+    /** a span of the track of [node], from [start] to now */
+    public void phase(int node, @NotNull String state, long start, @NotNull String round, @NotNull String endRound) {
+        final long now = writer.now();
+
+        writer.write(begin("X", state, node, start)
+                .append(",\"dur\":").append(Math.max(0, now - start))
+                .append(",\"cat\":\"phase\",\"args\":{\"round\":\"").append(round)
+                .append("\",\"endRound\":\"").append(endRound).append("\"}}"));
+    }
+
+    /** an envelope leaves [from]: returns the id of its flow */
+    public long sent(int from, int to, @NotNull List<Message> envelope, long delay) {
+        final long flow = writer.nextFlow();
+        final long now = writer.now();
+        final String name = name(envelope);
+
+        writer.write(begin("X", name, from, now)
+                .append(",\"dur\":0,\"cat\":\"send\",\"args\":{\"to\":").append(to)
+                .append(",\"round\":\"").append(envelope.get(0).getR1())
+                .append("\",\"messages\":").append(envelope.size())
+                .append(",\"delay\":").append(delay).append("}}"));
+        writer.write(begin("s", name, from, now)
+                .append(",\"cat\":\"message\",\"id\":").append(flow).append('}'));
+        return flow;
+    }
+
+    /** the envelope of the given [flow] has been delivered to [to] */
+    public void delivered(int to, @NotNull List<Message> envelope, long flow) {
+        final long now = writer.now();
+        final String name = name(envelope);
+
+        writer.write(begin("X", name, to, now)
+                .append(",\"dur\":0,\"cat\":\"receive\",\"args\":{\"from\":").append(envelope.get(0).getSender())
+                .append("}}"));
+        writer.write(begin("f", name, to, now)
+                .append(",\"cat\":\"message\",\"bp\":\"e\",\"id\":").append(flow).append('}'));
+    }
+
+    /** an envelope from [from] to [to] has been lost (or cut by a partition) */
+    public void lost(int from, int to, @NotNull List<Message> envelope) {
+        writer.write(begin("i", "lost " + name(envelope), from, writer.now())
+                .append(",\"s\":\"t\",\"cat\":\"lost\",\"args\":{\"to\":").append(to).append("}}"));
+    }
+
+    /** a point in time of the track of [node] (e.g. a decision) */
+    public void instant(int node, @NotNull String name) {
+        writer.write(begin("i", name, node, writer.now())
+                .append(",\"s\":\"t\",\"cat\":\"node\"}"));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /** the common fields of an event (the object is left open) */
+    private StringBuilder begin(String phase, String name, int tid, long ts) {
+        return new StringBuilder(128)
+                .append("{\"ph\":\"").append(phase)
+                .append("\",\"name\":\"").append(name)
+                .append("\",\"pid\":").append(pid)
+                .append(",\"tid\":").append(tid)
+                .append(",\"ts\":").append(ts);
+    }
+
+    /** the types of the messages of an envelope (e.g. "last+accept") */
+    private static String name(@NotNull List<Message> envelope) {
+        if (envelope.size() == 1)
+            return envelope.get(0).getType().name();
+
+        final StringBuilder sb = new StringBuilder();
+
+        for (Message message: envelope)
+            sb.append(message.getType().name()).append('+');
+
+        sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+}
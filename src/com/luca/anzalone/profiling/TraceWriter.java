@@ -0,0 +1,134 @@
+package com.luca.anzalone.profiling;
+
+import com.sun.istack.internal.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TraceWriter streams trace events (the JSON array format of the Chrome trace-event format, readable by
+ * chrome://tracing and Perfetto) to a file: each event is written as soon as it happens, so the memory used is
+ * constant (the buffer of the stream), whatever the length of the trace.
+ *
+ * The writer of [Globals.TRACE_FILE] is shared by all the executions of the run (see [Timeline]), and it's closed
+ * on exit. The closing bracket of the array is optional for the viewers, so a trace cut short is still readable.
+ *
+ * @author Luca Anzalone
+ */
+public class TraceWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static TraceWriter shared;  // the writer of [Globals.TRACE_FILE]
+    private static boolean hooked = false;
+
+    private final Path path;
+    private final Writer out;
+    private final long origin = System.nanoTime();
+    private final AtomicInteger processes = new AtomicInteger();
+    private final AtomicLong flows = new AtomicLong();
+    private long events = 0;
+    private boolean closed = false;
+
+
+    public TraceWriter(@NotNull Path path) throws IOException {
+        this.path = path;
+        this.out = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), BUFFER_SIZE);
+        out.write("[\n");
+    }
+
+    /**
+     * The writer of the given [file], shared by the executions (null: no tracing).
+     * When the file changes (e.g. another scenario), the previous trace is closed.
+     */
+    public static synchronized TraceWriter shared(String file) {
+        if (file == null || file.isEmpty())
+            return null;
+
+        final Path path = Paths.get(file);
+
+        if (shared != null && shared.path.equals(path) && !shared.closed)
+            return shared;
+
+        closeShared();
+
+        try {
+            shared = new TraceWriter(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("can't write the trace to " + path, e);
+        }
+
+        if (!hooked) {
+            Runtime.getRuntime().addShutdownHook(new Thread(TraceWriter::closeShared));
+            hooked = true;
+        }
+
+        return shared;
+    }
+
+    /** flushes and closes the shared writer, if any */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /** microseconds elapsed since the creation of the writer (the time-stamps of the trace) */
+    public long now() {
+        return (System.nanoTime() - origin) / 1000;
+    }
+
+    /** a new process id: one per execution */
+    int nextProcess() {
+        return processes.incrementAndGet();
+    }
+
+    /** a new flow id: one per envelope */
+    long nextFlow() {
+        return flows.incrementAndGet();
+    }
+
+    /** appends an event (a JSON object) */
+    synchronized void write(@NotNull CharSequence event) {
+        if (closed)
+            return;
+
+        try {
+            if (events++ > 0)
+                out.write(",\n");
+
+            out.append(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized long getEvents() {
+        return events;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized void close() {
+        if (closed)
+            return;
+
+        closed = true;
+
+        try {
+            out.write("\n]\n");
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
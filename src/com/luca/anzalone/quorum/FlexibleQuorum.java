@@ -0,0 +1,50 @@
+package com.luca.anzalone.quorum;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.Set;
+
+/**
+ * Flexible Paxos quorums: phase 1 needs [phase1] voters, phase 2 needs [phase2] voters.
+ * Safety only requires the two kind of quorums to intersect, that is |Q1| + |Q2| > N.
+ * A small phase-2 quorum makes the steady-state (begin / accept) faster, at the cost of a bigger phase 1.
+ *
+ * @author Luca Anzalone
+ */
+public class FlexibleQuorum implements QuorumSystem {
+    private final int phase1;
+    private final int phase2;
+
+    public FlexibleQuorum(int phase1, int phase2) {
+        if (phase1 < 1 || phase2 < 1)
+            throw new IllegalArgumentException("quorum sizes must be positive");
+
+        this.phase1 = phase1;
+        this.phase2 = phase2;
+    }
+
+    @Override
+    public boolean isPhase1Quorum(@NotNull Set<Integer> voters, int totalNodes) {
+        return voters.size() >= phase1;
+    }
+
+    @Override
+    public boolean isPhase2Quorum(@NotNull Set<Integer> voters, int totalNodes) {
+        return voters.size() >= phase2;
+    }
+
+    @Override
+    public void validate(int totalNodes) {
+        if (phase1 + phase2 <= totalNodes)
+            throw new IllegalArgumentException(String.format(
+                    "flexible quorums must intersect: |Q1| (%d) + |Q2| (%d) <= N (%d)", phase1, phase2, totalNodes));
+
+        if (phase1 > totalNodes || phase2 > totalNodes)
+            throw new IllegalArgumentException("quorum size greater than the number of nodes");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("flexible [Q1: %d, Q2: %d]", phase1, phase2);
+    }
+}
@@ -0,0 +1,75 @@
+package com.luca.anzalone.quorum;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.Set;
+
+/**
+ * Grid quorums: the nodes are placed, by rank, on a [rows] x [columns] grid.
+ * A phase-1 quorum is a complete row, while a phase-2 quorum is a complete column:
+ * every row intersects every column, so a tall grid gives small phase-2 quorums.
+ *
+ * @author Luca Anzalone
+ */
+public class GridQuorum implements QuorumSystem {
+    private final int rows;
+    private final int columns;
+
+    public GridQuorum(int rows, int columns) {
+        if (rows < 1 || columns < 1)
+            throw new IllegalArgumentException("the grid must have at least one row and one column");
+
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /** phase 1: any full row */
+    @Override
+    public boolean isPhase1Quorum(@NotNull Set<Integer> voters, int totalNodes) {
+        if (voters.size() < columns)
+            return false;
+
+        for (int row = 0; row < rows; ++row) {
+            int count = 0;
+
+            for (int col = 0; col < columns && voters.contains(row * columns + col); ++col)
+                count++;
+
+            if (count == columns)
+                return true;
+        }
+
+        return false;
+    }
+
+    /** phase 2: any full column */
+    @Override
+    public boolean isPhase2Quorum(@NotNull Set<Integer> voters, int totalNodes) {
+        if (voters.size() < rows)
+            return false;
+
+        for (int col = 0; col < columns; ++col) {
+            int count = 0;
+
+            for (int row = 0; row < rows && voters.contains(row * columns + col); ++row)
+                count++;
+
+            if (count == rows)
+                return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void validate(int totalNodes) {
+        if (rows * columns != totalNodes)
+            throw new IllegalArgumentException(String.format(
+                    "a %dx%d grid cannot hold %d nodes", rows, columns, totalNodes));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("grid [%dx%d]", rows, columns);
+    }
+}
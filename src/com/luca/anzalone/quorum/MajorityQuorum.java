@@ -0,0 +1,32 @@
+package com.luca.anzalone.quorum;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.Set;
+
+/**
+ * Simple majority: more than half of all the nodes (the default behaviour).
+ *
+ * @author Luca Anzalone
+ */
+public class MajorityQuorum implements QuorumSystem {
+
+    @Override
+    public boolean isPhase1Quorum(@NotNull Set<Integer> voters, int totalNodes) {
+        return majority(voters.size(), totalNodes);
+    }
+
+    @Override
+    public boolean isPhase2Quorum(@NotNull Set<Integer> voters, int totalNodes) {
+        return majority(voters.size(), totalNodes);
+    }
+
+    private boolean majority(int amount, int totalNodes) {
+        return 2 * amount > totalNodes;
+    }
+
+    @Override
+    public String toString() {
+        return "majority";
+    }
+}
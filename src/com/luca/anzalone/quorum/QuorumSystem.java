@@ -0,0 +1,26 @@
+package com.luca.anzalone.quorum;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.Set;
+
+/**
+ * A QuorumSystem decides when a set of voters is large enough to complete a phase of the protocol.
+ * Phase 1 ([collect] / [last]) and phase 2 ([begin] / [accept]) are checked separately, so the two
+ * kind of quorums can have different sizes as long as every phase-1 quorum intersects every phase-2 quorum.
+ * A quorum is counted against all the [totalNodes], never against the nodes known to be alive: two leaders that know
+ * disjoint sets of nodes would both reach a quorum.
+ *
+ * @author Luca Anzalone
+ */
+public interface QuorumSystem {
+
+    /** checks whether the [voters] that answered [last] form a phase-1 quorum */
+    boolean isPhase1Quorum(@NotNull Set<Integer> voters, int totalNodes);
+
+    /** checks whether the [voters] that answered [accept] form a phase-2 quorum */
+    boolean isPhase2Quorum(@NotNull Set<Integer> voters, int totalNodes);
+
+    /** checks that the quorum system can be used with a cluster of [totalNodes] nodes */
+    default void validate(int totalNodes) { }
+}
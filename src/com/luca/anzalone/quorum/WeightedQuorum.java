@@ -0,0 +1,64 @@
+package com.luca.anzalone.quorum;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Weighted votes: the node of rank i votes with [weights[i]].
+ * A set of voters is a quorum when its weight is a strict majority of the total weight.
+ *
+ * @author Luca Anzalone
+ */
+public class WeightedQuorum implements QuorumSystem {
+    private final int[] weights;
+    private final int totalWeight;
+
+    public WeightedQuorum(@NotNull int... weights) {
+        int total = 0;
+
+        for (int w: weights) {
+            if (w < 0)
+                throw new IllegalArgumentException("negative weight: " + w);
+            total += w;
+        }
+
+        if (total == 0)
+            throw new IllegalArgumentException("the total weight must be positive");
+
+        this.weights = weights.clone();
+        this.totalWeight = total;
+    }
+
+    @Override
+    public boolean isPhase1Quorum(@NotNull Set<Integer> voters, int totalNodes) {
+        return 2 * weightOf(voters) > totalWeight;
+    }
+
+    @Override
+    public boolean isPhase2Quorum(@NotNull Set<Integer> voters, int totalNodes) {
+        return 2 * weightOf(voters) > totalWeight;
+    }
+
+    @Override
+    public void validate(int totalNodes) {
+        if (weights.length != totalNodes)
+            throw new IllegalArgumentException(String.format(
+                    "expected %d weights, found %d", totalNodes, weights.length));
+    }
+
+    private int weightOf(Set<Integer> voters) {
+        int weight = 0;
+
+        for (int rank: voters)
+            weight += weights[rank];
+
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "weighted " + Arrays.toString(weights);
+    }
+}
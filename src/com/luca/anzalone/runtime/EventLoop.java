@@ -0,0 +1,134 @@
+package com.luca.anzalone.runtime;
+
+import com.sun.istack.internal.NotNull;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-threaded event loop: it runs the timed events (node steps and message deliveries) in order of time.
+ * Events scheduled by the loop itself go straight into the timer queue, while the ones coming from other loops
+ * pass through a lock-free inbox and wake the loop up.
+ *
+ * The loop keeps track of its utilisation (time spent running events) and of its queue depth.
+ *
+ * @author Luca Anzalone
+ */
+public class EventLoop extends Thread {
+    private final PriorityQueue<Event> timers = new PriorityQueue<>();
+    private final Queue<Event> inbox = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private long sequence;  // orders the events with the same time (FIFO)
+    // stats
+    private long startTime;
+    private long stopTime;
+    private long busyTime;
+    private long events;
+    private long depthSum;
+    private int maxDepth;
+
+
+    EventLoop(int id) {
+        super("EventLoop-" + id);
+        setDaemon(true);
+    }
+
+    /** runs [task] after [delay] ms (it can be called by any thread) */
+    public void schedule(long delay, @NotNull Runnable task) {
+        final Event event = new Event(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay)), task);
+
+        if (currentThread() == this) {
+            event.seq = sequence++;
+            timers.add(event);
+        } else {
+            inbox.add(event);
+            LockSupport.unpark(this);
+        }
+    }
+
+    /** stops the loop: the pending events are discarded */
+    void shutdown() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        startTime = System.nanoTime();
+
+        while (running) {
+            Event event;
+
+            while ((event = inbox.poll()) != null) {
+                event.seq = sequence++;
+                timers.add(event);
+            }
+
+            final Event next = timers.peek();
+            final long now = System.nanoTime();
+
+            if (next == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            if (next.time > now) {
+                LockSupport.parkNanos(this, next.time - now);
+                continue;
+            }
+
+            timers.poll();
+            depthSum += timers.size();
+            maxDepth = Math.max(maxDepth, timers.size() + 1);
+            events++;
+
+            next.task.run();
+            busyTime += System.nanoTime() - now;
+        }
+
+        stopTime = System.nanoTime();
+    }
+
+    /** fraction of time spent running events (valid after the shutdown) */
+    public double utilisation() {
+        final long elapsed = stopTime - startTime;
+        return (elapsed <= 0) ? 0 : busyTime / (double) elapsed;
+    }
+
+    /** average number of pending events, seen by each event run */
+    public double averageDepth() {
+        return (events == 0) ? 0 : depthSum / (double) events;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public long events() {
+        return events;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static class Event implements Comparable<Event> {
+        private final long time;  // nanoTime at which the event is due
+        private final Runnable task;
+        private long seq;
+
+        Event(long time, Runnable task) {
+            this.time = time;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(@NotNull Event other) {
+            if (time != other.time)
+                return Long.compare(time, other.time);
+
+            return Long.compare(seq, other.seq);
+        }
+    }
+}
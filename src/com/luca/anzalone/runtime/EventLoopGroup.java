@@ -0,0 +1,58 @@
+package com.luca.anzalone.runtime;
+
+import com.sun.istack.internal.NotNull;
+
+/**
+ * A fixed set of [EventLoop]s hosting many actors (the nodes): an actor is pinned to the loop [key % size],
+ * so its steps and the messages it receives always run on the same thread, and never concurrently.
+ *
+ * @author Luca Anzalone
+ */
+public class EventLoopGroup {
+    private final EventLoop[] loops;
+
+
+    public EventLoopGroup(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("at least one event loop is needed: " + size);
+
+        loops = new EventLoop[size];
+
+        for (int i = 0; i < size; ++i)
+            loops[i] = new EventLoop(i);
+    }
+
+    public EventLoopGroup start() {
+        for (EventLoop loop: loops)
+            loop.start();
+
+        return this;
+    }
+
+    /** runs [task] after [delay] ms, on the loop of the actor [key] */
+    public void schedule(int key, long delay, @NotNull Runnable task) {
+        loopOf(key).schedule(delay, task);
+    }
+
+    public EventLoop loopOf(int key) {
+        return loops[Math.floorMod(key, loops.length)];
+    }
+
+    /** stops every loop, and waits for them */
+    public void shutdown() {
+        for (EventLoop loop: loops)
+            loop.shutdown();
+
+        for (EventLoop loop: loops) {
+            try { loop.join(); } catch (InterruptedException ignored) { }
+        }
+    }
+
+    public int size() {
+        return loops.length;
+    }
+
+    public EventLoop get(int i) {
+        return loops[i];
+    }
+}
@@ -0,0 +1,197 @@
+package com.luca.anzalone.runtime;
+
+import com.luca.anzalone.utils.Message;
+import com.sun.istack.internal.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The mailbox of a node: the received messages, in order of arrival, waiting to be read.
+ * A mailbox can be bounded ([capacity] > 0), and when it's full the [policy] decides which message is shed:
+ *   - dropOldest: the oldest message leaves room to the new one;
+ *   - dropByPriority: the oldest message with the lowest priority (see [Message.Type.priority]) leaves room,
+ *     unless the new message has a lower priority, in which case the new message is shed;
+ *   - blockSender: the messages for a full mailbox wait at their sender, on their own link (see [Channel]), so the
+ *     sender goes on with the other links; a message that finds the mailbox full anyway is shed.
+ *
+ * The messages are kept in a queue per type, each one stamped with its order of arrival: reading a type ([take])
+ * doesn't scan the others, and the oldest message of a priority is at the head of one of its types.
+ *
+ * @author Luca Anzalone
+ */
+public class Mailbox {
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    private final int capacity;  // 0: unbounded
+    private final Policy policy;
+    private final ArrayDeque<Entry>[] queues;  // by type (ordinal)
+    private int size = 0;
+    private long arrivals = 0;
+    // stats
+    private int shed;
+    private int maxSize;
+
+
+    public Mailbox(int capacity, @NotNull Policy policy) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("negative mailbox capacity: " + capacity);
+
+        this.capacity = capacity;
+        this.policy = policy;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final ArrayDeque<Entry>[] byType = new ArrayDeque[TYPES.length];
+        queues = byType;
+
+        for (int i = 0; i < TYPES.length; ++i)
+            queues[i] = new ArrayDeque<>();
+    }
+
+    /** enqueues a received [message], returns false if it (the message itself) has been shed */
+    public synchronized boolean add(@NotNull Message message) {
+        if (isFull()) {
+            shed++;
+
+            switch (policy) {
+                case dropOldest:
+                    dropOldest(Integer.MAX_VALUE);
+                    break;
+
+                case dropByPriority:
+                    if (!dropLowest(message.getType().priority()))
+                        return false;
+                    break;
+
+                case blockSender:
+                    return false;
+            }
+        }
+
+        queues[message.getType().ordinal()].add(new Entry(arrivals++, message));
+        size++;
+        maxSize = Math.max(maxSize, size);
+        return true;
+    }
+
+    /** removes the oldest message with the lowest priority, if not greater than [priority] */
+    private boolean dropLowest(int priority) {
+        int lowest = Integer.MAX_VALUE;
+
+        for (Message.Type type: TYPES) {
+            if (!queues[type.ordinal()].isEmpty())
+                lowest = Math.min(lowest, type.priority());
+        }
+
+        return lowest <= priority && dropOldest(lowest);
+    }
+
+    /** removes the oldest message of the given [priority] (any, with MAX_VALUE) */
+    private boolean dropOldest(int priority) {
+        ArrayDeque<Entry> oldest = null;
+
+        for (Message.Type type: TYPES) {
+            final ArrayDeque<Entry> queue = queues[type.ordinal()];
+
+            if (queue.isEmpty() || (priority != Integer.MAX_VALUE && type.priority() != priority))
+                continue;
+
+            if (oldest == null || queue.peek().arrival < oldest.peek().arrival)
+                oldest = queue;
+        }
+
+        if (oldest == null)
+            return false;
+
+        oldest.poll();
+        size--;
+        return true;
+    }
+
+    /** removes and returns the messages of the given [type], in order of arrival */
+    public synchronized List<Message> take(@NotNull Message.Type type) {
+        final ArrayDeque<Entry> queue = queues[type.ordinal()];
+        final List<Message> selected = new ArrayList<>(queue.size());
+
+        for (Entry entry: queue)
+            selected.add(entry.message);
+
+        size -= queue.size();
+        queue.clear();
+        return selected;
+    }
+
+    /** the messages waiting to be read, in order of arrival */
+    public synchronized List<Message> messages() {
+        final List<Entry> entries = new ArrayList<>(size);
+
+        for (ArrayDeque<Entry> queue: queues)
+            entries.addAll(queue);
+
+        entries.sort(Comparator.comparingLong(entry -> entry.arrival));
+
+        final List<Message> messages = new ArrayList<>(entries.size());
+
+        for (Entry entry: entries)
+            messages.add(entry.message);
+
+        return messages;
+    }
+
+    public synchronized void clear() {
+        for (ArrayDeque<Entry> queue: queues)
+            queue.clear();
+
+        size = 0;
+    }
+
+    /** whether a message would find room (always, when unbounded) */
+    public synchronized boolean hasRoom() {
+        return !isFull();
+    }
+
+    private boolean isFull() {
+        return capacity > 0 && size >= capacity;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** number of messages shed because of the capacity */
+    public synchronized int getShed() {
+        return shed;
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /** what to do when the mailbox is full */
+    public enum Policy {
+        dropOldest,
+        dropByPriority,
+        blockSender,
+    }
+
+    /** a message, with its order of arrival */
+    private static class Entry {
+        private final long arrival;
+        private final Message message;
+
+        Entry(long arrival, Message message) {
+            this.arrival = arrival;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.luca.anzalone.safety;
+
+import com.luca.anzalone.utils.Message;
+import com.luca.anzalone.utils.Round;
+import com.sun.istack.internal.NotNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * SafetyChecker verifies, online, the safety invariants of an execution while it runs:
+ *   - agreement: every decided value is the same;
+ *   - validity: a decided value is one of the proposed values;
+ *   - promise monotonicity: a node never promises (commit) a round lower than a previous promise;
+ *   - no acceptance below commit: a node never accepts a value in a round lower than its promise.
+ *
+ * The promises and the acceptances are read from the wire ([sent]): a [last] message is a promise of its sender, an
+ * [accept] message an acceptance, whatever the node believes its state is. The sender order is the one they're made
+ * in (the deliveries reorder and duplicate them). The checks keep O(1) state each (per node, for the promises).
+ * The last [TRACE_SIZE] events are kept in a ring of primitive arrays, and only formatted when a
+ * [SafetyViolation] is thrown.
+ *
+ * A repaired node lost its memory (see Node.brokenStep), but the checker keeps the promise it forgot: a promise or an
+ * acceptance below it (and not below the ones made after the repair) is an amnesia. The fault model of the simulation
+ * allows it, so it's counted ([getAmnesias]) instead of thrown; it's a violation of the protocol nonetheless, whose
+ * effects the agreement check catches. Once the node promises that round again, nothing is forgotten anymore.
+ *
+ * @author Luca Anzalone
+ */
+public class SafetyChecker {
+    private static final int TRACE_SIZE = 32;
+
+    private final boolean enabled;
+    // invariants state
+    private final Set<Integer> proposed = new HashSet<>();
+    private final int[] promiseCount;
+    private final int[] promiseId;
+    private final int[] forgottenCount;  // the highest promise lost by a repair (none: the empty round)
+    private final int[] forgottenId;
+    private int amnesias = 0;
+    private boolean hasDecision = false;
+    private int decidedValue;
+    private SafetyViolation violation;
+    // trace (ring buffer)
+    private final Event[] traceEvent = new Event[TRACE_SIZE];
+    private final int[] traceNode    = new int[TRACE_SIZE];
+    private final int[] traceCount   = new int[TRACE_SIZE];
+    private final int[] traceId      = new int[TRACE_SIZE];
+    private final int[] traceValue   = new int[TRACE_SIZE];
+    private final long[] traceTime   = new long[TRACE_SIZE];
+    private long events;
+
+    public SafetyChecker(int nodes, boolean enabled) {
+        this.enabled = enabled;
+        this.promiseCount = new int[nodes];
+        this.promiseId    = new int[nodes];
+        this.forgottenCount = new int[nodes];
+        this.forgottenId    = new int[nodes];
+
+        for (int node = 0; node < nodes; ++node) {
+            reset(node);
+            forget(node);
+        }
+    }
+
+    /** a [message] leaves its sender: [last] is a promise, [accept] an acceptance (see [promised] and [accepted]) */
+    public void sent(@NotNull Message message) {
+        if (!enabled) return;
+
+        if (message.getType() == Message.Type.last)
+            promised(message.getSender(), message.getR1());
+        else if (message.getType() == Message.Type.accept)
+            accepted(message.getSender(), message.getR1());
+    }
+
+    /** [value] is proposed by [node] */
+    public synchronized void proposed(int node, int value) {
+        if (!enabled) return;
+
+        record(Event.proposed, node, null, value);
+        proposed.add(value);
+    }
+
+    /** [node] promises (commits to) [round] */
+    public synchronized void promised(int node, @NotNull Round round) {
+        if (!enabled) return;
+
+        record(Event.promised, node, round, 0);
+
+        if (below(node, round))
+            fail(String.format("promise monotonicity: node %d promised %s after (%d, %d)",
+                    node, round, promiseCount[node], promiseId[node]));
+
+        if (forgotten(node, round))
+            amnesias++;
+        else
+            forget(node);
+
+        promiseCount[node] = round.getCount();
+        promiseId[node] = round.getId();
+    }
+
+    /** [node] accepts a value in [round] */
+    public synchronized void accepted(int node, @NotNull Round round) {
+        if (!enabled) return;
+
+        record(Event.accepted, node, round, 0);
+
+        if (below(node, round))
+            fail(String.format("acceptance below commit: node %d accepted %s with commit (%d, %d)",
+                    node, round, promiseCount[node], promiseId[node]));
+
+        if (forgotten(node, round))
+            amnesias++;
+    }
+
+    /** [node] decides [value] */
+    public synchronized void decided(int node, int value) {
+        if (!enabled) return;
+
+        record(Event.decided, node, null, value);
+
+        if (!proposed.contains(value))
+            fail(String.format("validity: node %d decided %d, never proposed %s", node, value, proposed));
+
+        if (hasDecision && decidedValue != value)
+            fail(String.format("agreement: node %d decided %d, but %d was already decided", node, value, decidedValue));
+
+        hasDecision  = true;
+        decidedValue = value;
+    }
+
+    /** [node] has been repaired, and its memory reset: its promise is remembered as forgotten */
+    public synchronized void repaired(int node) {
+        if (!enabled) return;
+
+        record(Event.repaired, node, null, 0);
+
+        if (!forgotten(node, new Round(promiseCount[node], promiseId[node]))) {
+            forgottenCount[node] = promiseCount[node];
+            forgottenId[node] = promiseId[node];
+        }
+
+        reset(node);
+    }
+
+    /** the promises and acceptances of the repaired nodes below the promise they forgot */
+    public synchronized int getAmnesias() {
+        return amnesias;
+    }
+
+    /** the first violation found, if any */
+    public synchronized SafetyViolation getViolation() {
+        return violation;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Utilities
+    // -----------------------------------------------------------------------------------------------------------------
+    private void reset(int node) {
+        final Round empty = Round.empty();
+        promiseCount[node] = empty.getCount();
+        promiseId[node] = empty.getId();
+    }
+
+    private void forget(int node) {
+        final Round empty = Round.empty();
+        forgottenCount[node] = empty.getCount();
+        forgottenId[node] = empty.getId();
+    }
+
+    /** whether [round] is lower than the promise [node] forgot in a repair */
+    private boolean forgotten(int node, Round round) {
+        return round.getCount() < forgottenCount[node] ||
+               (round.getCount() == forgottenCount[node] && round.getId() < forgottenId[node]);
+    }
+
+    /** whether [round] is lower than the promise of [node] */
+    private boolean below(int node, Round round) {
+        return round.getCount() < promiseCount[node] ||
+               (round.getCount() == promiseCount[node] && round.getId() < promiseId[node]);
+    }
+
+    private void record(Event event, int node, Round round, int value) {
+        final int i = (int) (events++ % TRACE_SIZE);
+        traceEvent[i] = event;
+        traceNode[i]  = node;
+        traceCount[i] = (round == null) ? Integer.MIN_VALUE : round.getCount();
+        traceId[i]    = (round == null) ? Integer.MIN_VALUE : round.getId();
+        traceValue[i] = value;
+        traceTime[i]  = System.currentTimeMillis();
+    }
+
+    private void fail(String reason) {
+        final SafetyViolation error = new SafetyViolation("SAFETY VIOLATION - " + reason, trace());
+
+        if (violation == null)
+            violation = error;
+
+        throw error;
+    }
+
+    /** formats the last recorded events, from the oldest one */
+    private String trace() {
+        final StringBuilder sb = new StringBuilder("Last events:\n");
+        final long first = Math.max(0, events - TRACE_SIZE);
+
+        for (long e = first; e < events; ++e) {
+            final int i = (int) (e % TRACE_SIZE);
+            sb.append(String.format("\t15%d [Node-%d] %s", traceTime[i], traceNode[i], traceEvent[i]));
+
+            if (traceCount[i] != Integer.MIN_VALUE)
+                sb.append(String.format(" round: (%d, %d)", traceCount[i], traceId[i]));
+
+            if (traceEvent[i] == Event.proposed || traceEvent[i] == Event.decided)
+                sb.append(" value: ").append(traceValue[i]);
+
+            sb.append("\n");
+        }
+
+        return sb.toString();
+    }
+
+    private enum Event {
+        proposed,
+        promised,
+        accepted,
+        decided,
+        repaired,
+    }
+}
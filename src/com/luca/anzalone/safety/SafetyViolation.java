@@ -0,0 +1,25 @@
+package com.luca.anzalone.safety;
+
+import com.sun.istack.internal.NotNull;
+
+/**
+ * Thrown by the [SafetyChecker] as soon as an invariant of the protocol is broken.
+ * The message contains the offending event and the last events observed before it.
+ *
+ * @author Luca Anzalone
+ */
+public class SafetyViolation extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String trace;
+
+    SafetyViolation(@NotNull String reason, @NotNull String trace) {
+        super(reason + "\n" + trace);
+        this.trace = trace;
+    }
+
+    /** the last events observed before (and including) the violation */
+    public String getTrace() {
+        return trace;
+    }
+}
@@ -0,0 +1,133 @@
+package com.luca.anzalone.scenario;
+
+import com.luca.anzalone.stats.AverageSummary;
+import com.luca.anzalone.stats.Statistic;
+import com.luca.anzalone.utils.Debug;
+import com.sun.istack.internal.NotNull;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.luca.anzalone.stats.AverageSummary.Metric.*;
+
+/**
+ * BatchRunner executes a list of scenarios back to back, in the same (warmed-up) JVM,
+ * without any interaction. The results are written, one CSV row per scenario, as soon as each scenario ends.
+ *
+ * Usage: [--out results.csv] scenario.properties... (a directory means all its .properties files)
+ *
+ * @author Luca Anzalone
+ */
+public class BatchRunner {
+    private static final String HEADER = "scenario,nodes,executions,agreements," +
+            "messages_mean,messages_ci,messages_p99,lost_mean,duplicated_mean,deliveries_mean," +
+            "rounds_mean,rounds_p90,rounds_p99," +
+            "time_mean,time_ci,time_sd,time_p50,time_p90,time_p99," +
+            "phase1_latency,phase2_latency,elections,election_messages,detection_time," +
+            "bytes_mean,bytes_p99,leader_egress_mean";
+
+    private final List<Scenario> scenarios;
+    private final Path output;
+
+    public BatchRunner(@NotNull List<Scenario> scenarios, @NotNull Path output) {
+        this.scenarios = scenarios;
+        this.output = output;
+    }
+
+    /** parses the command line arguments: [--out file] followed by scenario files or directories */
+    public static BatchRunner fromArgs(@NotNull String... args) throws IOException {
+        final List<Scenario> scenarios = new ArrayList<>();
+        Path output = Paths.get("results.csv");
+
+        for (int i = 0; i < args.length; ++i) {
+            if ("--out".equals(args[i]) && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+                continue;
+            }
+
+            final Path path = Paths.get(args[i]);
+
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    for (Path file: files.filter(f -> f.toString().endsWith(".properties"))
+                                         .sorted()
+                                         .collect(Collectors.toList()))
+                        scenarios.add(Scenario.load(file));
+                }
+            } else {
+                scenarios.add(Scenario.load(path));
+            }
+        }
+
+        return new BatchRunner(scenarios, output);
+    }
+
+    /** runs every scenario, writing its results to [output] */
+    public void run() throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output))) {
+            out.println(HEADER);
+            out.flush();
+
+            for (Scenario scenario: scenarios) {
+                System.out.println("\n> Scenario: " + scenario.getName());
+                scenario.apply();
+
+                if (scenario.getWarmup() > 0)
+                    scenario.newSummary(scenario.getWarmup()).calculate();
+
+                Debug.clearExecutionsLog();
+
+                final AverageSummary summary = scenario.newSummary(scenario.getExecutions())
+                        .calculate();
+
+                summary.print();
+                out.println(row(scenario, summary));
+                out.flush();
+                Debug.clearExecutionsLog();
+            }
+        }
+
+        System.out.println("\nResults written to " + output.toAbsolutePath());
+    }
+
+    private String row(Scenario scenario, AverageSummary summary) {
+        final Statistic messages = summary.statistic(AverageSummary.Metric.messages);
+        final Statistic rounds = summary.statistic(AverageSummary.Metric.rounds);
+        final Statistic time = summary.statistic(AverageSummary.Metric.time);
+
+        return String.join(",",
+                scenario.getName(),
+                String.valueOf(scenario.getValues().length),
+                String.valueOf(summary.getExecutions()),
+                String.valueOf(summary.getAgreements()),
+                number(messages.mean()), number(messages.confidence()), number(messages.p99()),
+                number(summary.statistic(lost).mean()),
+                number(summary.statistic(duplicated).mean()),
+                number(summary.statistic(deliveries).mean()),
+                number(rounds.mean()), number(rounds.p90()), number(rounds.p99()),
+                number(time.mean()), number(time.confidence()), number(time.stdDev()),
+                number(time.p50()), number(time.p90()), number(time.p99()),
+                number(summary.phase1.mean()),
+                number(summary.phase2.mean()),
+                String.valueOf(summary.elections),
+                String.valueOf(summary.electionMessages),
+                number(summary.detection.mean()),
+                number(summary.statistic(bytes).mean()), number(summary.statistic(bytes).p99()),
+                number(summary.statistic(egress).mean()));
+    }
+
+    private static String number(double x) {
+        if (Double.isInfinite(x) || Double.isNaN(x))
+            return "";
+
+        return String.format(Locale.ROOT, "%.3f", x);
+    }
+}
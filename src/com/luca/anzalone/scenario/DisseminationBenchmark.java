@@ -0,0 +1,76 @@
+package com.luca.anzalone.scenario;
+
+import com.luca.anzalone.network.Dissemination;
+import com.luca.anzalone.stats.AverageSummary;
+import com.luca.anzalone.stats.Statistic;
+import com.luca.anzalone.utils.Debug;
+import com.luca.anzalone.utils.Globals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Compares the ways a decision is spread ([Globals.DISSEMINATION]) as the cluster grows: for each number of nodes
+ * the scenario runs with the flood, the tree and the gossip (both with the [Globals.FANOUT] of the scenario), with
+ * majority quorums of all the voters, and the success messages, the total messages and the time each node takes to
+ * learn the decision (since the first decision, mean and tail) are reported side by side.
+ *
+ * Usage: scenario.properties [cluster sizes...]
+ *
+ * @author Luca Anzalone
+ */
+public class DisseminationBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [cluster sizes...]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        final int[] sizes = (args.length > 1) ? new int[args.length - 1] : new int[] {5, 9, 15, 25};
+
+        for (int i = 1; i < args.length; ++i)
+            sizes[i - 1] = Integer.parseInt(args[i]);
+
+        scenario.apply();
+
+        final StringBuilder table = new StringBuilder("\n> Scenario: " + scenario.getName() + ", fan-out " +
+                Globals.FANOUT + "\n")
+                .append(String.format("%6s %7s %10s %10s %10s %10s %10s %10s %12s\n", "nodes", "mode",
+                        "success", "messages", "learn (ms)", "p50", "p90", "p99", "agreements"));
+
+        for (int nodes: sizes) {
+            final int[] values = new int[nodes];
+
+            for (int i = 0; i < nodes; ++i)
+                values[i] = i;
+
+            for (Dissemination mode: Dissemination.values()) {
+                scenario.apply();
+                Globals.DISSEMINATION = mode;
+
+                System.out.println("\n> Nodes: " + nodes + ", " + mode);
+
+                if (scenario.getWarmup() > 0)
+                    new AverageSummary(scenario.getWarmup(), values).calculate();
+
+                Debug.clearExecutionsLog();
+
+                final AverageSummary summary = new AverageSummary(scenario.getExecutions(), values).calculate();
+                final Statistic learn = summary.statistic(AverageSummary.Metric.learn);
+
+                summary.print();
+                Debug.clearExecutionsLog();
+
+                table.append(String.format("%6d %7s %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %8d/%d\n", nodes, mode,
+                        summary.statistic(AverageSummary.Metric.successes).mean(),
+                        summary.statistic(AverageSummary.Metric.messages).mean(),
+                        learn.mean(), learn.p50(), learn.p90(), learn.p99(),
+                        summary.getAgreements(), summary.getExecutions()));
+            }
+        }
+
+        System.out.println(table);
+    }
+}
@@ -0,0 +1,102 @@
+package com.luca.anzalone.scenario;
+
+import com.luca.anzalone.Cluster;
+import com.luca.anzalone.utils.Debug;
+import com.luca.anzalone.utils.Globals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Decides the same commands with a single leader and with rotating leaders ([Globals.MULTI_LEADER]), each command
+ * being a group of a [Cluster]. With a single leader there's a group per command, all led by the machine 0; with
+ * rotating leaders the instances are owned round-robin by the machines, and a fraction ([idle ratio]) of them has
+ * no command, so their owners skip them. The throughput (commands per second) and the load of each machine
+ * (messages sent and received) are reported side by side.
+ *
+ * Usage: scenario.properties [commands] [idle ratio]
+ *
+ * @author Luca Anzalone
+ */
+public class MultiLeaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [commands] [idle ratio]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        final int commands = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        final double idle  = (args.length > 2) ? Double.parseDouble(args[2]) : 0.5;
+
+        if (idle < 0 || idle >= 1)
+            throw new IllegalArgumentException("the idle ratio must be in [0, 1): " + idle);
+
+        final int machines = scenario.getValues().length;
+        final StringBuilder table = new StringBuilder("\n> Scenario: " + scenario.getName() + ", " + commands +
+                " commands on " + machines + " machines\n")
+                .append(String.format("%22s %10s %8s %10s %12s %12s %10s   %s\n", "mode", "instances", "skips",
+                        "time (ms)", "commands/s", "messages", "imbalance", "load of each machine"));
+
+        run(scenario, "single leader", false, instances(commands, 0, machines), table);
+        run(scenario, "rotating", true, instances(commands, 0, machines), table);
+        run(scenario, String.format("rotating, %.0f%% idle", idle * 100), true,
+                instances(commands, idle, machines), table);
+
+        System.out.println(table);
+    }
+
+    private static void run(Scenario scenario, String mode, boolean multiLeader, int[][] instances,
+                            StringBuilder table) {
+        scenario.apply();
+        Globals.MULTI_LEADER = multiLeader;
+        Debug.EXECUTIONS_LOG = false;  // a single log for all the groups would only grow
+
+        System.out.println("\n> " + mode);
+
+        final Cluster cluster = new Cluster(instances).launch().awaitTermination();
+        long messages = 0;
+        final StringBuilder loads = new StringBuilder();
+
+        for (int machine = 0; machine < instances[0].length; ++machine) {
+            messages += cluster.load(machine);
+            loads.append(machine == 0 ? "" : " ").append(cluster.load(machine));
+        }
+
+        cluster.print();
+        Debug.clearExecutionsLog();
+
+        table.append(String.format("%22s %10d %8d %10d %12.1f %12d %10.2f   %s\n", mode, cluster.size(),
+                cluster.getSkips(), cluster.getElapsed(), cluster.commandsPerSecond(), messages / 2,
+                cluster.loadImbalance(), loads));
+    }
+
+    /**
+     * The instances deciding [commands] commands: an instance is idle (every node proposes the no-op) with
+     * probability [idle], otherwise every node proposes the next command (only the owner's proposal is kept
+     * with rotating leaders, see [Cluster])
+     */
+    private static int[][] instances(int commands, double idle, int machines) {
+        final Random random = new Random(42);
+        final List<int[]> rows = new ArrayList<>();
+        int command = 0;
+
+        while (command < commands) {
+            final int[] row = new int[machines];
+
+            if (random.nextDouble() < idle)
+                Arrays.fill(row, Cluster.NOOP);
+            else
+                Arrays.fill(row, command++);
+
+            rows.add(row);
+        }
+
+        return rows.toArray(new int[0][]);
+    }
+}
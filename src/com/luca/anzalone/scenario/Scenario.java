@@ -0,0 +1,211 @@
+package com.luca.anzalone.scenario;
+
+import com.luca.anzalone.quorum.FlexibleQuorum;
+import com.luca.anzalone.quorum.GridQuorum;
+import com.luca.anzalone.quorum.MajorityQuorum;
+import com.luca.anzalone.quorum.QuorumSystem;
+import com.luca.anzalone.quorum.WeightedQuorum;
+import com.luca.anzalone.stats.AverageSummary;
+import com.luca.anzalone.utils.Debug;
+import com.luca.anzalone.utils.Globals;
+import com.sun.istack.internal.NotNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A Scenario is a declarative description of a simulation, read from a properties file:
+ * <pre>
+ *   name       = baseline
+ *   # initial value of each node (cluster size)
+ *   values     = 1, 2, 0, 3
+ *   executions = 100
+ *   # executions run before measuring (discarded)
+ *   warmup     = 5
+ *   # optional early stopping (see AverageSummary.stopWhen)
+ *   stop.metric    = time
+ *   stop.precision = 0.05
+ *
+ *   # any int, boolean, string or enum field of Globals
+ *   CHANNEL_DELAY = 100
+ *   # majority | flexible q1 q2 | grid rows columns | weighted w0 w1 ...
+ *   QUORUM        = flexible 3 2
+ *
+ *   # any flag of Debug
+ *   debug.CONSOLE_LOG   = false
+ *   debug.MSG_RECEPTION = true
+ * </pre>
+ * Parameters not listed keep their default value. As in any properties file, a comment takes a whole line: a
+ * trailing "# ..." would be part of the value.
+ *
+ * @author Luca Anzalone
+ */
+public class Scenario {
+    private static final Map<Field, Object> DEFAULTS = defaults();
+
+    private final String name;
+    private final Properties properties;
+
+    public Scenario(@NotNull String name, @NotNull Properties properties) {
+        this.name = properties.getProperty("name", name).trim();
+        this.properties = properties;
+    }
+
+    /** reads a scenario from the given properties [file] */
+    public static Scenario load(@NotNull Path file) throws IOException {
+        final Properties properties = new Properties();
+
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+
+        final String fileName = file.getFileName().toString();
+        return new Scenario(fileName.replaceFirst("\\.properties$", ""), properties);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int[] getValues() {
+        final String values = properties.getProperty("values");
+
+        if (values == null)
+            throw new IllegalArgumentException("scenario '" + name + "': missing 'values'");
+
+        return Arrays.stream(values.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    public int getExecutions() {
+        return Integer.parseInt(properties.getProperty("executions", "1").trim());
+    }
+
+    public int getWarmup() {
+        return Integer.parseInt(properties.getProperty("warmup", "0").trim());
+    }
+
+    /** restores the default parameters, then sets the [Globals] and [Debug] parameters of the scenario */
+    public void apply() {
+        restoreDefaults();
+
+        for (String key: properties.stringPropertyNames()) {
+            final String value = properties.getProperty(key).trim();
+
+            switch (key) {
+                case "name":
+                case "values":
+                case "executions":
+                case "warmup":
+                case "stop.metric":
+                case "stop.precision":
+                    break;
+
+                case "QUORUM":
+                    Globals.QUORUM = parseQuorum(value);
+                    break;
+
+                default:
+                    if (key.startsWith("debug."))
+                        set(Debug.class, key.substring("debug.".length()), value);
+                    else
+                        set(Globals.class, key, value);
+            }
+        }
+    }
+
+    /** creates the summary for [executions] runs of this scenario */
+    public AverageSummary newSummary(int executions) {
+        final AverageSummary summary = new AverageSummary(executions, getValues());
+        final String metric = properties.getProperty("stop.metric");
+
+        if (metric != null) {
+            final double precision = Double.parseDouble(properties.getProperty("stop.precision", "0.05").trim());
+            summary.stopWhen(AverageSummary.Metric.valueOf(metric.trim()), precision);
+        }
+
+        return summary;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // -- Utilities
+    // -----------------------------------------------------------------------------------------------------------------
+    private void set(Class<?> target, String fieldName, String value) {
+        try {
+            final Field field = target.getField(fieldName);
+
+            if (field.getType() == int.class)
+                field.setInt(null, Integer.parseInt(value));
+            else if (field.getType() == boolean.class)
+                field.setBoolean(null, Boolean.parseBoolean(value));
+            else if (field.getType() == String.class)
+                field.set(null, value.isEmpty() ? null : value);
+            else if (field.getType().isEnum())
+                field.set(null, enumValue(field.getType(), value));
+            else
+                throw new IllegalArgumentException("scenario '" + name + "': unsupported parameter " + fieldName);
+
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("scenario '" + name + "': unknown parameter " + fieldName);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> type, String value) {
+        return Enum.valueOf((Class) type, value);
+    }
+
+    private QuorumSystem parseQuorum(String value) {
+        final String[] tokens = value.split("\\s+");
+        final int[] args = Arrays.stream(tokens, 1, tokens.length).mapToInt(Integer::parseInt).toArray();
+
+        switch (tokens[0]) {
+            case "majority": return new MajorityQuorum();
+            case "flexible": return new FlexibleQuorum(args[0], args[1]);
+            case "grid":     return new GridQuorum(args[0], args[1]);
+            case "weighted": return new WeightedQuorum(args);
+        }
+
+        throw new IllegalArgumentException("scenario '" + name + "': unknown quorum system " + tokens[0]);
+    }
+
+    private static void restoreDefaults() {
+        try {
+            for (Map.Entry<Field, Object> entry: DEFAULTS.entrySet())
+                entry.getKey().set(null, entry.getValue());
+
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** the initial value of every public static field of [Globals] and [Debug] */
+    private static Map<Field, Object> defaults() {
+        final Map<Field, Object> defaults = new HashMap<>();
+
+        try {
+            for (Class<?> target: new Class<?>[] {Globals.class, Debug.class}) {
+                for (Field field: target.getFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers()))
+                        defaults.put(field, field.get(null));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return defaults;
+    }
+}
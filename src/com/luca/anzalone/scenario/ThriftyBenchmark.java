@@ -0,0 +1,73 @@
+package com.luca.anzalone.scenario;
+
+import com.luca.anzalone.stats.AverageSummary;
+import com.luca.anzalone.stats.Statistic;
+import com.luca.anzalone.utils.Debug;
+import com.luca.anzalone.utils.Globals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Compares the full broadcast of collect and begin with the thrifty one ([Globals.THRIFTY]) as the cluster grows:
+ * for each number of nodes the scenario runs with both, with majority quorums of all the voters, and the messages
+ * of the two phases, the total messages and the time to agreement (mean and tail) are reported side by side.
+ *
+ * Usage: scenario.properties [cluster sizes...]
+ *
+ * @author Luca Anzalone
+ */
+public class ThriftyBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [cluster sizes...]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        final int[] sizes = (args.length > 1) ? new int[args.length - 1] : new int[] {5, 9, 15, 25};
+
+        for (int i = 1; i < args.length; ++i)
+            sizes[i - 1] = Integer.parseInt(args[i]);
+
+        final StringBuilder table = new StringBuilder("\n> Scenario: " + scenario.getName() + "\n")
+                .append(String.format("%6s %9s %10s %10s %10s %10s %10s %9s %12s\n", "nodes", "mode",
+                        "phase msgs", "messages", "mean (ms)", "p50", "p99", "widen/ph", "agreements"));
+
+        for (int nodes: sizes) {
+            final int[] values = new int[nodes];
+
+            for (int i = 0; i < nodes; ++i)
+                values[i] = i;
+
+            for (boolean thrifty: new boolean[] {false, true}) {
+                scenario.apply();
+                Globals.THRIFTY = thrifty;
+
+                System.out.println("\n> Nodes: " + nodes + ", " + (thrifty ? "thrifty" : "broadcast"));
+
+                if (scenario.getWarmup() > 0)
+                    new AverageSummary(scenario.getWarmup(), values).calculate();
+
+                Debug.clearExecutionsLog();
+
+                final AverageSummary summary = new AverageSummary(scenario.getExecutions(), values).calculate();
+                final Statistic time = summary.statistic(AverageSummary.Metric.time);
+
+                summary.print();
+                Debug.clearExecutionsLog();
+
+                table.append(String.format("%6d %9s %10.1f %10.1f %10.1f %10.1f %10.1f %9.2f %8d/%d\n", nodes,
+                        thrifty ? "thrifty" : "broadcast",
+                        summary.statistic(AverageSummary.Metric.phases).mean(),
+                        summary.statistic(AverageSummary.Metric.messages).mean(),
+                        time.mean(), time.p50(), time.p99(),
+                        summary.widenings / (double) Math.max(1, summary.thriftyPhases),
+                        summary.getAgreements(), summary.getExecutions()));
+            }
+        }
+
+        System.out.println(table);
+    }
+}
@@ -0,0 +1,66 @@
+package com.luca.anzalone.scenario;
+
+import com.luca.anzalone.stats.AverageSummary;
+import com.luca.anzalone.stats.Statistic;
+import com.luca.anzalone.utils.Debug;
+import com.luca.anzalone.utils.Globals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Compares the static timeouts ([Globals.TIMEOUT] and [Globals.ELECTION_TIMEOUT], as set by the scenario) with the
+ * adaptive ones ([Globals.ADAPTIVE_TIMEOUTS]) as the network delay changes: for each [Globals.CHANNEL_DELAY] the
+ * scenario runs with both, and the time to agreement (mean and tail) is reported side by side.
+ *
+ * Usage: scenario.properties [channel delays...]
+ *
+ * @author Luca Anzalone
+ */
+public class TimeoutBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: scenario.properties [channel delays...]");
+            return;
+        }
+
+        final Scenario scenario = Scenario.load(Paths.get(args[0]));
+        final int[] delays = (args.length > 1) ? new int[args.length - 1] : new int[] {10, 50, 100, 200};
+
+        for (int i = 1; i < args.length; ++i)
+            delays[i - 1] = Integer.parseInt(args[i]);
+
+        final StringBuilder table = new StringBuilder("\n> Scenario: " + scenario.getName() + "\n")
+                .append(String.format("%8s %10s %10s %10s %10s %10s %8s %12s\n", "delay", "timeouts",
+                        "mean (ms)", "p50", "p90", "p99", "rounds", "agreements"));
+
+        for (int delay: delays) {
+            for (boolean adaptive: new boolean[] {false, true}) {
+                scenario.apply();
+                Globals.CHANNEL_DELAY = delay;
+                Globals.ADAPTIVE_TIMEOUTS = adaptive;
+
+                System.out.println("\n> Channel delay: " + delay + "ms, " + (adaptive ? "adaptive" : "static") + " timeouts");
+
+                if (scenario.getWarmup() > 0)
+                    scenario.newSummary(scenario.getWarmup()).calculate();
+
+                Debug.clearExecutionsLog();
+
+                final AverageSummary summary = scenario.newSummary(scenario.getExecutions()).calculate();
+                final Statistic time = summary.statistic(AverageSummary.Metric.time);
+
+                summary.print();
+                Debug.clearExecutionsLog();
+
+                table.append(String.format("%8d %10s %10.1f %10.1f %10.1f %10.1f %8.2f %8d/%d\n", delay,
+                        adaptive ? "adaptive" : "static", time.mean(), time.p50(), time.p90(), time.p99(),
+                        summary.statistic(AverageSummary.Metric.rounds).mean(),
+                        summary.getAgreements(), summary.getExecutions()));
+            }
+        }
+
+        System.out.println(table);
+    }
+}
@@ -1,25 +1,52 @@
 package com.luca.anzalone.stats;
 
 import com.luca.anzalone.Channel;
+import com.luca.anzalone.network.Dissemination;
 import com.luca.anzalone.utils.Debug;
+import com.luca.anzalone.utils.Globals;
+import com.luca.anzalone.utils.Payload;
 import com.sun.istack.internal.NotNull;
 
+import java.util.Locale;
+
 /**
- * AverageSummary is responsible to compute a set of statistics related to a set of executions
+ * AverageSummary is responsible to compute a set of statistics related to a set of executions.
+ * Each metric is a streaming [Statistic] (mean, variance, confidence interval and quantiles), and the run can
+ * stop early, once the confidence interval of a chosen metric is tight enough (see [stopWhen]). The per-event
+ * metrics (detections, quorums) pool the samples of all the executions, fed by their summaries.
  *
  * @author Luca Anzalone
  */
 public class AverageSummary extends Summary {
+    private static final int MIN_EXECUTIONS = 10;  // executions needed before an early stop
+
     private int[] initialValues;
     private int executionCount;
+    private int executed;
     // average-summary related info
     private int agreements;
-    private float avgBreaking;
-    private int minRounds = Integer.MAX_VALUE;
-    private int maxRounds = Integer.MIN_VALUE;
-    private int avgRounds = 0;
-    private int minMessages = Integer.MAX_VALUE;
-    private int maxMessages = Integer.MIN_VALUE;
+    private final Statistic messages   = new Statistic();
+    private final Statistic lost       = new Statistic();
+    private final Statistic duplicated = new Statistic();
+    private final Statistic envelopes  = new Statistic();
+    private final Statistic replyStats = new Statistic();
+    private final Statistic phaseStats = new Statistic();  // collect, last, begin and accept per decision
+    private final Statistic successStats = new Statistic(); // success messages per decision
+    private final Statistic byteStats  = new Statistic();  // bytes per decision, out-of-band included
+    private final Statistic outOfBandStats = new Statistic(); // out-of-band bytes per decision
+    private final Statistic egressStats = new Statistic(); // bytes sent by the deciding leader
+    private final Statistic roundStats = new Statistic();  // rounds per decision
+    private final Statistic timeStats  = new Statistic();  // time to agreement
+    private final Statistic electionStats = new Statistic(); // messages per election (executions with elections)
+    private final Statistic learnStats = new Statistic();  // time to learn the decision, since the first one (per node)
+    private final Statistic[] timeByLeader;  // time elapsed, according to the rank of the deciding leader
+    // event loops (summed over the executions, the max depth is the max)
+    private double[] utilisationSum;
+    private double[] depthSum;
+    private int[] maxDepth;
+    // early stopping
+    private Metric target;
+    private double precision;
 
 
     public AverageSummary(int executions, @NotNull int...initialValues) {
@@ -28,15 +55,32 @@ public class AverageSummary extends Summary {
 
         this.initialValues  = initialValues;
         this.executionCount = executions;
+        this.timeByLeader   = new Statistic[initialValues.length];
+
+        for (int rank = 0; rank < initialValues.length; ++rank)
+            timeByLeader[rank] = new Statistic();
+    }
+
+    /**
+     * Early stopping: the run ends (before [executionCount]) as soon as the 95% confidence interval of the
+     * [metric] mean is within +/- [relativePrecision] of the mean itself (e.g. 0.05 for 5%).
+     */
+    public AverageSummary stopWhen(@NotNull Metric metric, double relativePrecision) {
+        assert relativePrecision > 0;
+
+        this.target = metric;
+        this.precision = relativePrecision;
+        return this;
     }
 
-    /** compute the summary for [executionCount] simulations */
+    /** compute the summary for (at most) [executionCount] simulations */
     public AverageSummary calculate() {
         print("Running %d executions...", executionCount);
 
         for (int i = 0; i < executionCount; ++i) {
-            final Channel channel = new Channel(initialValues)
-                    .launch();
+            final Channel channel = new Channel(initialValues);
+            channel.summary.feed(this);  // the detections and the quorums are pooled over the executions
+            channel.launch();
 
             Debug.log(String.format("15%d - Execution %d", System.currentTimeMillis(), i + 1),
                     "---------------------------------------------------------------");
@@ -47,36 +91,124 @@ public class AverageSummary extends Summary {
 
                 // track values of each summary
                 // messages
-                totalMessages += summary.totalMessages;
-                lostMessages  += summary.lostMessages;
-                duplicatedMessages += summary.duplicatedMessages;
-                minMessages = Integer.min(minMessages, summary.totalMessages);
-                maxMessages = Integer.max(maxMessages, summary.totalMessages);
+                messages.add(summary.totalMessages);
+                lost.add(summary.lostMessages);
+                duplicated.add(summary.duplicatedMessages);
+                envelopes.add(summary.deliveries);
+                replyStats.add(summary.replies);
+                phaseStats.add(summary.phaseMessages);
+                successStats.add(summary.successMessages);
+                byteStats.add(summary.bytes + summary.outOfBandBytes);
+                outOfBandStats.add(summary.outOfBandBytes);
+                suppressedMessages += summary.suppressedMessages;
+                shedMessages += summary.shedMessages;
+                blockedSends += summary.blockedSends;
+                maxMailbox = Math.max(maxMailbox, summary.maxMailbox);
                 // nodes
                 brokenEvents += summary.brokenEvents;
+                amnesias += summary.amnesias;
+                // elections
+                elections += summary.elections;
+                electionMessages += summary.electionMessages;
+
+                if (summary.elections > 0)
+                    electionStats.add(summary.electionMessages / (double) summary.elections);
+                backoffs     += summary.backoffs;
+                preVotesLost += summary.preVotesLost;
                 // execution
-                avgRounds += summary.rounds;
-                minRounds = Integer.min(minRounds, summary.rounds);
-                maxRounds = Integer.max(maxRounds, summary.rounds);
-                timeElapsed   += summary.timeElapsed;
+                roundStats.add(summary.rounds);
+                timeStats.add(summary.timeElapsed);
+                summary.getLearnLatencies().forEach(learnStats::add);
                 agreements    += summary.agreement ? 1 : 0;
+                // leader placement
+                if (summary.leader >= 0) {
+                    egressStats.add(summary.leaderEgress());
+                    timeByLeader[summary.leader].add(summary.timeElapsed);
+                }
+                // quorums
+                thriftyPhases += summary.thriftyPhases;
+                widenings     += summary.widenings;
+                // runtime
+                if (summary.loopUtilisation != null)
+                    addEventLoops(summary);
             });
 
-            print("> execution %d/%d completed", i + 1, executionCount);
+            executed = i + 1;
+            print("> execution %d/%d completed", executed, executionCount);
+
+            if (isPrecise()) {
+                print("> early stop: %s within +/-%s of the mean", target, percentage((float) precision, 1));
+                break;
+            }
         }
 
-        // average values
-        totalMessages = Math.floorDiv(totalMessages, executionCount);
-        lostMessages  = Math.floorDiv(lostMessages, executionCount);
-        timeElapsed   = Math.floorDiv(timeElapsed, executionCount);
-        duplicatedMessages = Math.floorDiv(duplicatedMessages, executionCount);
-        avgRounds   = Math.floorDiv(avgRounds, executionCount);
         totalNodes  = initialValues.length;
-        avgBreaking = brokenEvents / (float) executionCount;
-
         return this;
     }
 
+    private void addEventLoops(@NotNull Summary summary) {
+        final int loops = summary.loopUtilisation.length;
+
+        if (utilisationSum == null) {
+            utilisationSum = new double[loops];
+            depthSum = new double[loops];
+            maxDepth = new int[loops];
+        }
+
+        for (int i = 0; i < loops; ++i) {
+            utilisationSum[i] += summary.loopUtilisation[i];
+            depthSum[i] += summary.loopDepth[i];
+            maxDepth[i]  = Math.max(maxDepth[i], summary.loopMaxDepth[i]);
+        }
+    }
+
+    private boolean isPrecise() {
+        return target != null && executed >= MIN_EXECUTIONS && statistic(target).relativeConfidence() <= precision;
+    }
+
+    public Statistic statistic(@NotNull Metric metric) {
+        switch (metric) {
+            case messages:   return messages;
+            case lost:       return lost;
+            case duplicated: return duplicated;
+            case deliveries: return envelopes;
+            case replies:    return replyStats;
+            case phases:     return phaseStats;
+            case successes:  return successStats;
+            case bytes:      return byteStats;
+            case egress:     return egressStats;
+            case rounds:     return roundStats;
+            case time:       return timeStats;
+            case learn:      return learnStats;
+        }
+
+        throw new IllegalArgumentException("unknown metric: " + metric);
+    }
+
+    public int getExecutions() {
+        return executed;
+    }
+
+    public int getAgreements() {
+        return agreements;
+    }
+
+    /** per-execution metrics, and the per-node [learn] latency (any of them can drive the early stopping) */
+    public enum Metric {
+        messages,
+        lost,
+        duplicated,
+        deliveries,
+        replies,
+        phases,
+        successes,
+        bytes,
+        egress,
+        rounds,
+        time,
+        learn,
+    }
+
     // -----------------------------------------------------------------------------------------------------------------
     // -- Utilities
     // -----------------------------------------------------------------------------------------------------------------
@@ -84,13 +216,66 @@ public class AverageSummary extends Summary {
         if (x == 0)
             return "0%";
 
-        final String s = String.format("%.2f", x / y * 100f) + "%";
-        final String[] split = s.split(",");
+        final String s = String.format(Locale.ROOT, "%.2f", x / y * 100f);
+
+        if (s.endsWith(".00"))
+            return s.substring(0, s.length() - 3) + "%";
+
+        return s + "%";
+    }
+
+    /** average time elapsed for each leader, as: [rank: time (decisions), ...] */
+    private String leaderTimes() {
+        final StringBuilder sb = new StringBuilder("[");
+
+        for (int rank = 0; rank < timeByLeader.length; ++rank) {
+            if (timeByLeader[rank].count() == 0)
+                continue;
+
+            if (sb.length() > 1)
+                sb.append(", ");
+
+            sb.append(rank).append(": ")
+              .append(Math.round(timeByLeader[rank].mean())).append("ms (")
+              .append(timeByLeader[rank].count()).append(")");
+        }
+
+        return sb.append("]").toString();
+    }
+
+    /** the mailbox policy, the messages shed and the peak size of a mailbox */
+    private String mailboxes() {
+        if (Globals.MAILBOX_CAPACITY == 0)
+            return "unbounded (max " + maxMailbox + ")";
+
+        return Globals.MAILBOX_CAPACITY + ", " + Globals.MAILBOX_POLICY + " (shed: " + shedMessages +
+                ", blocked sends: " + blockedSends + ", max " + maxMailbox + ")";
+    }
+
+    /** the payload size, how it is agreed on, and the bandwidth of the links */
+    private String payloads() {
+        if (Globals.PAYLOAD_SIZE == 0)
+            return "none (plain values)";
 
-        if ("00%".equals(split[1]))
-            return split[0] + "%";
+        return Globals.PAYLOAD_SIZE + " bytes, " + (Globals.DIGEST_CONSENSUS ?
+                "spread out-of-band, " + Payload.DIGEST_SIZE + "-byte digests in the phases" : "carried by the phases") +
+                ((Globals.BANDWIDTH > 0) ? ", " + Globals.BANDWIDTH + " bytes/ms per link" : "");
+    }
+
+    /** per-loop averages over the executions */
+    private String runtime() {
+        if (utilisationSum == null)
+            return runtime(null, null, null);
+
+        final double[] utilisation = new double[utilisationSum.length];
+        final double[] depth = new double[depthSum.length];
 
-        return s.replace(",", ".");
+        for (int i = 0; i < utilisation.length; ++i) {
+            utilisation[i] = utilisationSum[i] / executed;
+            depth[i] = depthSum[i] / executed;
+        }
+
+        return runtime(utilisation, depth, maxDepth);
     }
 
     private void print(String format, Object...args) {
@@ -99,20 +284,48 @@ public class AverageSummary extends Summary {
 
     @Override
     public String toString() {
+        final float avgBreaking = brokenEvents / (float) Math.max(1, executed);
+
         return "\nAverageSummary [\n\t" +
                 "> Messages:\n\t\t" +
-                "- total: [min: " + minMessages + ", avg: " + totalMessages + ", max: " + maxMessages + "]\n\t\t" +
-                "- avg. lost: " + percentage(lostMessages, totalMessages) + " (" + lostMessages + ")\n\t\t" +
-                "- avg. duplicated: " + percentage(duplicatedMessages, totalMessages) + " (" + duplicatedMessages + ")\n\t" +
+                "- total: " + messages + "\n\t\t" +
+                "- avg. lost: " + percentage((float) lost.mean(), (float) messages.mean()) + " " + lost + "\n\t\t" +
+                "- avg. duplicated: " + percentage((float) duplicated.mean(), (float) messages.mean()) + " " + duplicated + "\n\t\t" +
+                "- suppressed duplicates: " + (Globals.DEDUPLICATION ? suppressedMessages : "off") + "\n\t\t" +
+                "- avg. replies: " + percentage((float) replyStats.mean(), (float) messages.mean()) + " " + replyStats + "\n\t\t" +
+                "- avg. phases: " + percentage((float) phaseStats.mean(), (float) messages.mean()) + " " + phaseStats + "\n\t\t" +
+                "- avg. success: " + percentage((float) successStats.mean(), (float) messages.mean()) + " " + successStats +
+                " (" + Globals.DISSEMINATION + (Globals.DISSEMINATION == Dissemination.flood ? "" : ", fan-out " + Globals.FANOUT) + ")\n\t\t" +
+                "- avg. deliveries: " + percentage((float) envelopes.mean(), (float) messages.mean()) + " " + envelopes + "\n\t\t" +
+                "- mailboxes: " + mailboxes() + "\n\t" +
+                "> Bytes: payloads " + payloads() + "\n\t\t" +
+                "- per decision: " + byteStats + "\n\t\t" +
+                "- out-of-band per decision: " + outOfBandStats + "\n\t\t" +
+                "- leader egress: " + egressStats + "\n\t" +
                 "> Nodes:\n\t\t" +
                 "- total: " + totalNodes + "\n\t\t" +
-//                "- breaking per round: " + percentage(avgBreaking, brokenEvents) + " (" + Math.round(avgBreaking)+ ")\n\t" +
-                "- breaking per round: " + percentage(avgBreaking, totalNodes) + " (" + Math.round(avgBreaking)+ ")\n\t" +
+                "- breaking per round: " + percentage(avgBreaking, totalNodes) + " (" + Math.round(avgBreaking)+ ")\n\t\t" +
+                "- amnesias (repaired nodes below a forgotten promise): " +
+                (Globals.SAFETY_CHECK ? amnesias : "unchecked") + "\n\t\t" +
+                "- detection time (ms): " + detection + " (" + detection.count() + " detected)\n\t" +
+                "> Elections:" + (Globals.FAILURE_DETECTOR ? " heartbeat failure detector" : " query-alive") + "\n\t\t" +
+                "- total: " + elections + "\n\t\t" +
+                "- messages per election: " + electionStats + "\n\t\t" +
+                "- backoffs: " + backoffs + ", lost pre-votes: " + preVotesLost + "\n\t" +
                 "> Executions:\n\t\t" +
-                "- count: " + executionCount + "\n\t\t" +
-                "- rounds: [min: " + minRounds + ", avg: " + avgRounds + ", max: " + maxRounds + "]\n\t\t" +
-                "- avg. time elapsed: " + timeElapsed + "ms\n\t\t" +
-                "- agreements: " + percentage(agreements, executionCount) + " (" + agreements + ")\n" +
+                "- count: " + executed + "\n\t\t" +
+                "- rounds: " + roundStats + "\n\t\t" +
+                "- time elapsed (ms): " + timeStats + "\n\t\t" +
+                "- learn latency (ms): " + learnStats + "\n\t\t" +
+                "- avg. time by leader: " + leaderTimes() + "\n\t\t" +
+                "- agreements: " + percentage(agreements, executed) + " (" + agreements + ")\n\t" +
+                "> Quorums: " + Globals.QUORUM + "\n\t\t" +
+                "- phase 1 latency (ms): " + phase1 + " (" + phase1.count() + " quorums)\n\t\t" +
+                "- phase 2 latency (ms): " + phase2 + " (" + phase2.count() + " quorums)\n\t\t" +
+                "- timeouts: " + (Globals.ADAPTIVE_TIMEOUTS ? "adaptive (ms) " + quorumTimeouts :
+                "static, " + Globals.TIMEOUT + "ms") + "\n\t\t" +
+                "- thrifty phases: " + (Globals.THRIFTY ? thriftyPhases + " (widenings: " + widenings + ")" : "off") + "\n\t" +
+                "> Runtime: " + runtime() + "\n" +
                 "]";
     }
 }
@@ -0,0 +1,107 @@
+package com.luca.anzalone.stats;
+
+import java.util.Arrays;
+
+/**
+ * Streaming estimation of the [p]-quantile, with the P-square algorithm (Jain and Chlamtac):
+ * only five markers are kept, whatever the number of observations.
+ *
+ * @author Luca Anzalone
+ */
+public class Quantile {
+    private final double p;
+    private final double[] height   = new double[5];  // marker heights
+    private final double[] position = new double[5];  // actual marker positions
+    private final double[] desired  = new double[5];  // desired marker positions
+    private final double[] increment;
+    private int count;
+
+    public Quantile(double p) {
+        assert p > 0 && p < 1;
+
+        this.p = p;
+        this.increment = new double[] {0, p / 2, p, (1 + p) / 2, 1};
+    }
+
+    public void add(double x) {
+        if (count < 5) {
+            height[count++] = x;
+
+            if (count == 5) {
+                Arrays.sort(height);
+
+                for (int i = 0; i < 5; ++i)
+                    position[i] = i + 1;
+
+                desired[0] = 1;
+                desired[1] = 1 + 2 * p;
+                desired[2] = 1 + 4 * p;
+                desired[3] = 3 + 2 * p;
+                desired[4] = 5;
+            }
+            return;
+        }
+
+        // find the cell k such that height[k] <= x < height[k + 1]
+        int k;
+
+        if (x < height[0]) {
+            height[0] = x;
+            k = 0;
+        } else if (x >= height[4]) {
+            height[4] = x;
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= height[k + 1])
+                k++;
+        }
+
+        for (int i = k + 1; i < 5; ++i)
+            position[i]++;
+
+        for (int i = 0; i < 5; ++i)
+            desired[i] += increment[i];
+
+        // adjust the heights of the middle markers
+        for (int i = 1; i <= 3; ++i) {
+            final double d = desired[i] - position[i];
+
+            if ((d >= 1 && position[i + 1] - position[i] > 1) || (d <= -1 && position[i - 1] - position[i] < -1)) {
+                final int s = (d >= 0) ? 1 : -1;
+                final double q = parabolic(i, s);
+
+                height[i] = (height[i - 1] < q && q < height[i + 1]) ? q : linear(i, s);
+                position[i] += s;
+            }
+        }
+
+        count++;
+    }
+
+    /** the estimated quantile (exact with less than five observations) */
+    public double value() {
+        if (count == 0)
+            return 0;
+
+        if (count < 5) {
+            final double[] sorted = Arrays.copyOf(height, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(p * count) - 1)];
+        }
+
+        return height[2];
+    }
+
+    private double parabolic(int i, int s) {
+        final double n = position[i], prev = position[i - 1], next = position[i + 1];
+
+        return height[i] + s / (next - prev) * (
+                (n - prev + s) * (height[i + 1] - height[i]) / (next - n) +
+                (next - n - s) * (height[i] - height[i - 1]) / (n - prev));
+    }
+
+    private double linear(int i, int s) {
+        return height[i] + s * (height[i + s] - height[i]) / (position[i + s] - position[i]);
+    }
+}
@@ -0,0 +1,100 @@
+package com.luca.anzalone.stats;
+
+import java.util.Locale;
+
+/**
+ * Statistic keeps, in constant memory, the streaming statistics of a metric:
+ * min, max, mean and variance (with the Welford online algorithm), plus p50, p90 and p99 quantile sketches.
+ *
+ * @author Luca Anzalone
+ */
+public class Statistic {
+    private static final double Z_95 = 1.96;  // two-sided 95% confidence
+
+    private long count;
+    private double mean;
+    private double m2;  // sum of the squared differences from the mean
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final Quantile p50 = new Quantile(0.50);
+    private final Quantile p90 = new Quantile(0.90);
+    private final Quantile p99 = new Quantile(0.99);
+
+    public void add(double x) {
+        count++;
+
+        final double delta = x - mean;
+        mean += delta / count;
+        m2   += delta * (x - mean);
+
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+
+        p50.add(x);
+        p90.add(x);
+        p99.add(x);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return mean;
+    }
+
+    /** sample variance */
+    public double variance() {
+        return (count < 2) ? 0 : m2 / (count - 1);
+    }
+
+    public double stdDev() {
+        return Math.sqrt(variance());
+    }
+
+    /** half-width of the 95% confidence interval of the mean */
+    public double confidence() {
+        return (count < 2) ? Double.POSITIVE_INFINITY : Z_95 * stdDev() / Math.sqrt(count);
+    }
+
+    /** half-width of the confidence interval, relative to the mean */
+    public double relativeConfidence() {
+        return (mean == 0) ? confidence() : confidence() / Math.abs(mean);
+    }
+
+    public double min() {
+        return (count == 0) ? 0 : min;
+    }
+
+    public double max() {
+        return (count == 0) ? 0 : max;
+    }
+
+    public double p50() {
+        return p50.value();
+    }
+
+    public double p90() {
+        return p90.value();
+    }
+
+    public double p99() {
+        return p99.value();
+    }
+
+    @Override
+    public String toString() {
+        final double ci = confidence();
+
+        return String.format(Locale.ROOT, "[min: %s, avg: %.2f +/- %s, max: %s, sd: %.2f, p50: %s, p90: %s, p99: %s]",
+                format(min()), mean, Double.isInfinite(ci) ? "-" : String.format(Locale.ROOT, "%.2f", ci),
+                format(max()), stdDev(), format(p50()), format(p90()), format(p99()));
+    }
+
+    private static String format(double x) {
+        if (x == Math.rint(x))
+            return String.valueOf((long) x);
+
+        return String.format(Locale.ROOT, "%.2f", x);
+    }
+}
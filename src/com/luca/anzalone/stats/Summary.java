@@ -1,14 +1,21 @@
 package com.luca.anzalone.stats;
 
+import com.luca.anzalone.runtime.EventLoopGroup;
 import com.luca.anzalone.utils.Round;
 import com.sun.istack.internal.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
  * Summary compute the statistics for a single execution
  *
+ * The metrics sampled once per event (a detection, a quorum) are streaming [Statistic]s: a summary can pass its
+ * samples to a [parent] too ([feed]), so that the summary of many executions pools them.
+ *
  * @author Luca Anzalone
  */
 public class Summary {
@@ -16,14 +23,49 @@ public class Summary {
     public int totalMessages;
     public int lostMessages;
     public int duplicatedMessages;
+    public int deliveries;  // envelopes actually sent across the channel (delayed or lost as a unit)
+    public int shedMessages;  // dropped by a full mailbox
+    public int suppressedMessages;  // duplicates dropped on receipt (deduplication)
+    public int replies;       // last, accept, oldRound, alive and preVoteGranted messages
+    public int phaseMessages; // collect, last, begin and accept messages
+    public int successMessages;
+    public int blockedSends;  // messages held at their sender, for a full mailbox
+    public int maxMailbox;    // peak number of messages in a mailbox
+    // bytes (headers and payloads)
+    public long bytes;           // sent across the channel
+    public long outOfBandBytes;  // payloads spread out-of-band (digest consensus)
+    public long[] egress;        // bytes sent by each node, out-of-band included
     // nodes
     public int totalNodes;
+    public int learners;         // non-voting nodes, besides the [totalNodes] voters
     public int brokenEvents;
+    public int amnesias;         // promises and acceptances of repaired nodes, below the promise they forgot
+    // elections and failure detection
+    public int elections;
+    public int electionMessages;  // queryAlive, alive and heartbeat messages
+    public int backoffs;
+    public int preVotesLost;
+    public final Statistic detection = new Statistic();  // time (ms) between the breaking of a node and its detection
     // execution
     public int rounds;
     public long timeElapsed;
     public boolean agreement = false;
+    public int leader = -1;  // rank of the first leader that reached a decision
+    private long decidedAt = 0;  // time of the first decision
+    private final List<Long> learnLatencies = new ArrayList<>();  // (ms) from the first decision, for each node
+    // quorums (time spent by a leader to collect a phase-1 / phase-2 quorum)
+    public final Statistic phase1 = new Statistic();
+    public final Statistic phase2 = new Statistic();
+    public final Statistic quorumTimeouts = new Statistic();  // the adaptive timeouts (ms) of the quorum waits
+    public int thriftyPhases;   // phases sent to a quorum only (thrifty)
+    public int widenings;       // thrifty requests sent to more voters, without the answers in time
+    // runtime (event loops only, null otherwise)
+    public double[] loopUtilisation;
+    public double[] loopDepth;  // average number of pending events
+    public int[] loopMaxDepth;
     private Map<Integer, Integer> decisions = new TreeMap<>();
+    private Map<Integer, Long> brokenSince  = new TreeMap<>();
+    private Summary parent;  // receives the per-event samples too (null: none)
 
     // -----------------------------------------------------------------------------------------------------------------
     // -- METHODS
@@ -41,12 +83,143 @@ public class Summary {
             rounds = round.getCount();
     }
 
-    /** keeps track of the decided values and if they are all the same (agreement) */
+    /** the samples of the per-event metrics (detections and quorums) are added to [parent] too */
+    public void feed(@NotNull Summary parent) {
+        this.parent = parent;
+    }
+
+    public synchronized void phase1Completed(long latency) {
+        phase1.add(latency);
+
+        if (parent != null)
+            parent.phase1Completed(latency);
+    }
+
+    public synchronized void phase2Completed(long latency) {
+        phase2.add(latency);
+
+        if (parent != null)
+            parent.phase2Completed(latency);
+    }
+
+    /** a leader waits a quorum for (at most) an adaptive [timeout] */
+    public synchronized void quorumWait(long timeout) {
+        quorumTimeouts.add(timeout);
+
+        if (parent != null)
+            parent.quorumWait(timeout);
+    }
+
+    /** a thrifty phase began or, if [widened], its request has been sent to more voters */
+    public synchronized void thriftyPhase(boolean widened) {
+        if (widened)
+            widenings++;
+        else
+            thriftyPhases++;
+    }
+
+    public synchronized void nodeBroken(int rank, long time) {
+        brokenSince.put(rank, time);
+    }
+
+    public synchronized void nodeRepaired(int rank) {
+        brokenSince.remove(rank);
+    }
+
+    /** a node has been suspected: if it was actually broken (and not yet detected) tracks the detection time */
+    public synchronized void failureDetected(int rank, long time) {
+        final Long since = brokenSince.remove(rank);
+
+        if (since != null)
+            detected(time - since);
+    }
+
+    /** a broken node has been detected after [elapsed] ms */
+    protected synchronized void detected(long elapsed) {
+        detection.add(elapsed);
+
+        if (parent != null)
+            parent.detected(elapsed);
+    }
+
+    /** a message of [bytes] sent by [rank] */
+    public synchronized void sent(int rank, int bytes) {
+        this.bytes += bytes;
+        egress[rank] += bytes;
+    }
+
+    /** payloads of [bytes] sent by [rank] out-of-band */
+    public synchronized void sentOutOfBand(int rank, long bytes) {
+        outOfBandBytes += bytes;
+        egress[rank] += bytes;
+    }
+
+    /** the bytes sent by the deciding leader (-1 if there's none) */
+    public long leaderEgress() {
+        return (leader < 0 || egress == null) ? -1 : egress[leader];
+    }
+
+    public synchronized void decidedBy(int rank) {
+        if (leader == -1)
+            leader = rank;
+    }
+
+    /**
+     * keeps track of the decided values and if they are all the same (agreement), and of the time each node learns
+     * the decision since the first one
+     */
     public synchronized void decidedValue(int rank, int value) {
+        final long now = System.currentTimeMillis();
+
+        if (decisions.isEmpty())
+            decidedAt = now;
+
+        learnLatencies.add(now - decidedAt);
         decisions.put(rank, value);
         agreement = decisions.values().stream().allMatch(v -> v == value);
     }
 
+    /** takes the utilisation and the queue depth of each loop (after the shutdown of the [group]) */
+    public void eventLoops(@NotNull EventLoopGroup group) {
+        loopUtilisation = new double[group.size()];
+        loopDepth    = new double[group.size()];
+        loopMaxDepth = new int[group.size()];
+
+        for (int i = 0; i < group.size(); ++i) {
+            loopUtilisation[i] = group.get(i).utilisation();
+            loopDepth[i]    = group.get(i).averageDepth();
+            loopMaxDepth[i] = group.get(i).maxDepth();
+        }
+    }
+
+    /** the time (ms) each node learned the decision, since the first decision (in order of learning) */
+    public synchronized List<Long> getLearnLatencies() {
+        return new ArrayList<>(learnLatencies);
+    }
+
+    /** the value decided by each node (rank -> value) */
+    public synchronized Map<Integer, Integer> getDecisions() {
+        return new TreeMap<>(decisions);
+    }
+
+    /** the utilisation and queue depth of each event loop, as: [util% (avg. depth, max depth), ...] */
+    protected String runtime(double[] utilisation, double[] depth, int[] maxDepth) {
+        if (utilisation == null)
+            return "a thread per node";
+
+        final StringBuilder sb = new StringBuilder()
+                .append(utilisation.length).append(" event loops [");
+
+        for (int i = 0; i < utilisation.length; ++i) {
+            if (i > 0)
+                sb.append(", ");
+
+            sb.append(String.format(Locale.ROOT, "%.1f%% (%.1f, %d)", utilisation[i] * 100, depth[i], maxDepth[i]));
+        }
+
+        return sb.append("]").toString();
+    }
+
     public void print() {
         System.out.println(this);
     }
@@ -57,15 +230,29 @@ public class Summary {
                 "> Messages:\n\t\t" +
                 "- total: " + totalMessages + "\n\t\t" +
                 "- lost: " + lostMessages + "\n\t\t" +
-                "- duplicated: " + duplicatedMessages + "\n\t" +
+                "- duplicated: " + duplicatedMessages + " (suppressed: " + suppressedMessages + ")\n\t\t" +
+                "- replies: " + replies + ", phases: " + phaseMessages + ", success: " + successMessages + "\n\t\t" +
+                "- deliveries: " + deliveries + "\n\t\t" +
+                "- shed: " + shedMessages + ", blocked sends: " + blockedSends + ", max mailbox: " + maxMailbox + "\n\t\t" +
+                "- bytes: " + bytes + " (out-of-band: " + outOfBandBytes + ", leader egress: " + leaderEgress() + ")\n\t" +
                 "> Nodes:\n\t\t" +
-                "- total: " + totalNodes + "\n\t\t" +
-                "- broken events: " + brokenEvents + "\n\t" +
+                "- total: " + totalNodes + " (learners: " + learners + ")\n\t\t" +
+                "- broken events: " + brokenEvents + " (amnesias: " + amnesias + ")\n\t\t" +
+                "- detection time: " + Math.round(detection.mean()) + "ms (" + detection.count() + " detected)\n\t" +
+                "> Elections:\n\t\t" +
+                "- total: " + elections + "\n\t\t" +
+                "- messages per election: " + ((elections == 0) ? 0 : Math.round(electionMessages / (double) elections)) + "\n\t\t" +
+                "- backoffs: " + backoffs + ", lost pre-votes: " + preVotesLost + "\n\t" +
                 "> Execution:\n\t\t" +
                 "- avg. rounds: " + rounds + "\n\t\t" +
                 "- time elapsed: " + timeElapsed + "ms\n\t\t" +
                 "- agreement: " + agreement + "\n\t\t" +
+                "- leader: " + leader + "\n\t\t" +
+                "- phase 1 latency: " + Math.round(phase1.mean()) + "ms (" + phase1.count() + " quorums)\n\t\t" +
+                "- phase 2 latency: " + Math.round(phase2.mean()) + "ms (" + phase2.count() + " quorums)\n\t\t" +
                 "- decisions: " + decisions.values() + "\n\t\t" +
+                "- learn latencies (ms): " + learnLatencies + "\n\t" +
+                "> Runtime: " + runtime(loopUtilisation, loopDepth, loopMaxDepth) + "\n" +
                 "]";
     }
 }
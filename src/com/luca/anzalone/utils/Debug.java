@@ -15,6 +15,7 @@ public class Debug {
     // flags for logging
     public static boolean CONSOLE_LOG = true;  // enable or disable console log
     public static boolean LOG_ALL = false;     // enable all logging flags
+    public static boolean EXECUTIONS_LOG = true;  // collect the executions log (see [printExecutionsLog])
     public static boolean MSG_RECEPTION;
     public static boolean MSG_SENDING;
     public static boolean MSG_LOST;
@@ -34,6 +35,9 @@ public class Debug {
 
     /** adds a new entry to [executionLog] */
     public static synchronized void log(@NotNull String name, @NotNull String format, Object...args) {
+        if (!EXECUTIONS_LOG)
+            return;
+
         List<String> logs = executionLog.containsKey(name) ? executionLog.get(name) : new ArrayList<>();
         logs.add(String.format(format, args));
 
@@ -45,6 +49,11 @@ public class Debug {
         log("Round (" + round.getCount() + "):", format, args);
     }
 
+    /** whether an entry of the given [flag] would be collected (so the callers can skip formatting it) */
+    public static boolean isLogging(boolean flag) {
+        return EXECUTIONS_LOG && (flag || LOG_ALL);
+    }
+
     /** log conditionally: according to a flag */
     public static void logIf(boolean flag, @NotNull String name, @NotNull String format, Object...args) {
         if (flag || LOG_ALL)
@@ -55,6 +64,11 @@ public class Debug {
         logIf(flag, "Round (" + round.getCount() + "):", format, args);
     }
 
+    /** forgets the logs collected so far */
+    public static synchronized void clearExecutionsLog() {
+        executionLog.clear();
+    }
+
     /**
      * shows the logs collected from all executions
      */
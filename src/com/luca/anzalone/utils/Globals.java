@@ -1,5 +1,11 @@
 package com.luca.anzalone.utils;
 
+import com.luca.anzalone.network.Dissemination;
+import com.luca.anzalone.network.Topology;
+import com.luca.anzalone.quorum.MajorityQuorum;
+import com.luca.anzalone.quorum.QuorumSystem;
+import com.luca.anzalone.runtime.Mailbox;
+
 /**
  * A set of global constants used to define the simulation environment
  *
@@ -14,4 +20,31 @@ public class Globals {
     public static int BROKEN_TIME   = 0;            // time (ms) to repair a node
     public static int MAX_EXE_SPEED = 0;            // define the maximum execution-speed of a node
     public static int ELECTION_TIMEOUT = 0;         // time before performing a new election
+    public static boolean ADAPTIVE_TIMEOUTS = false;// waits derived from the measured round-trip times of the peers
+    public static int MIN_TIMEOUT = 5;              // lower bound (ms) of an adaptive timeout
+    public static int MAX_TIMEOUT = 0;              // upper bound (ms) of an adaptive timeout (0: 4 x TIMEOUT)
+    public static boolean THRIFTY = false;          // collect and begin sent to a quorum of the fastest peers only
+    public static boolean FAILURE_DETECTOR = false; // heartbeat failure detector instead of the [queryAlive] flood
+    public static int HEARTBEAT_INTERVAL = 0;       // time (ms) between two heartbeats of a node
+    public static int BACKOFF = 0;                  // base (ms) of the randomized exponential backoff (0: disabled)
+    public static boolean PRE_VOTE = false;         // a would-be leader checks it could win before a new round
+    public static boolean SAFETY_CHECK = false;     // online check of agreement, validity, promises and acceptances
+    public static int LEASE_TIME = 0;               // time (ms) a leader can serve local reads (key-value store)
+    public static int RECONFIGURATION_WINDOW = 1;   // slots after which a new configuration is used (key-value store)
+    public static int LEARNERS = 0;                 // non-voting nodes of each channel, they only learn the decision
+    public static Dissemination DISSEMINATION = Dissemination.flood;  // how a decision is spread (flood, tree, gossip)
+    public static int FANOUT = 2;                   // children (tree) or random peers (gossip) a decision is spread to
+    public static QuorumSystem QUORUM = new MajorityQuorum();  // phase 1 and phase 2 quorums
+    public static boolean COALESCING = false;       // one envelope per link for the messages of a computation step
+    public static Topology TOPOLOGY = null;         // per-link network model (null: uniform, from the above rates)
+    public static int EVENT_LOOPS = 0;              // nodes hosted by this many event loops (0: a thread per node)
+    public static boolean MULTI_LEADER = false;     // the groups of a cluster are owned round-robin by the machines
+    public static int MAILBOX_CAPACITY = 0;         // max messages waiting to be read by a node (0: unbounded)
+    public static boolean SNAPSHOTS = false;        // track the in-flight messages, so that a channel can be forked
+    public static boolean DEDUPLICATION = false;    // per-sender sequence numbers, duplicates dropped on receipt
+    public static Mailbox.Policy MAILBOX_POLICY = Mailbox.Policy.dropOldest;  // what a full mailbox sheds
+    public static String TRACE_FILE = null;         // streams the executions as trace events (null: disabled)
+    public static int PAYLOAD_SIZE = 0;             // bytes of each proposed value, stored off-heap (0: plain values)
+    public static boolean DIGEST_CONSENSUS = false; // payloads spread out-of-band, the phases carry their digest only
+    public static int BANDWIDTH = 0;                // bytes per ms of each link, adding a transfer time (0: unlimited)
 }
@@ -2,57 +2,103 @@ package com.luca.anzalone.utils;
 
 import com.sun.istack.internal.NotNull;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
 /**
- * Messages sent across nodes
+ * Messages sent across nodes.
+ * A message is immutable: the sender is fixed at construction, so a broadcast shares
+ * the same instance among all the recipients (duplicates included).
+ * With [Globals.DEDUPLICATION] the channel stamps each message with a per-sender sequence number ([withSequence]),
+ * so that the receivers can drop the duplicates.
+ * With [Globals.PAYLOAD_SIZE] the messages carrying a value also carry its [Payload] (or just its digest, with
+ * [Globals.DIGEST_CONSENSUS]), as a read-only view of the off-heap bytes ([withPayload]).
  *
  * @author Luca Anzalone
  */
 public class Message {
-    private Type type;
-    private Round r1;
-    private Round r2;
-    private int value  = Integer.MIN_VALUE;
-    private int sender = Integer.MIN_VALUE;
+    public static final int HEADER_SIZE = 33;  // bytes of type, sender, rounds, value and sequence number
 
-    //TODO: add @NotNull to constructors
+    private final Type type;
+    private final Round r1;
+    private final Round r2;
+    private final int value;
+    private final int sender;
+    private final int[] heartbeats;
+    private final long seq;  // per-sender sequence number (0: none)
+    private final ByteBuffer payload;  // the payload of [value], or its digest (null: none)
 
     /** queryAlive, alive */
-    public Message(@NotNull Type type) {
-        this.type = type;
+    public Message(@NotNull Type type, int sender) {
+        this(type, sender, null, null, Integer.MIN_VALUE);
     }
 
-    /** collect, accept */
-    public Message(Type type, @NotNull Round r) {
-        this(type);
-        this.r1 = r;
+    /** collect, accept, preVote, preVoteGranted */
+    public Message(@NotNull Type type, int sender, @NotNull Round r) {
+        this(type, sender, r, null, Integer.MIN_VALUE);
     }
 
-    /** success */
-    public Message(@NotNull Type type, int value) {
-        this.type  = type;
-        this.value = value;
-    }
-
-    /** begin */
-    public Message(Type type, Round r, int value) {
-        this(type, r);
-        this.value = value;
+    /** begin, success (with the round of the decision) */
+    public Message(@NotNull Type type, int sender, @NotNull Round r, int value) {
+        this(type, sender, r, null, value);
     }
 
     /** old-round */
-    public Message(Type type, Round r1, @NotNull Round r2) {
-        this(type, r1);
-        this.r2 = r2;
+    public Message(@NotNull Type type, int sender, @NotNull Round r1, @NotNull Round r2) {
+        this(type, sender, r1, r2, Integer.MIN_VALUE);
     }
 
     /** last */
-    public Message(Type type, Round r1, Round r2, int value) {
-        this(type, r1, r2);
+    public Message(@NotNull Type type, int sender, Round r1, Round r2, int value) {
+        this.type   = type;
+        this.sender = sender;
+        this.r1 = r1;
+        this.r2 = r2;
         this.value = value;
+        this.heartbeats = null;
+        this.seq = 0;
+        this.payload = null;
+    }
+
+    /** heartbeat (the [heartbeats] array must not be modified after construction) */
+    public Message(@NotNull Type type, int sender, @NotNull int[] heartbeats) {
+        this.type   = type;
+        this.sender = sender;
+        this.r1 = null;
+        this.r2 = null;
+        this.value = Integer.MIN_VALUE;
+        this.heartbeats = heartbeats;
+        this.seq = 0;
+        this.payload = null;
+    }
+
+    private Message(@NotNull Message message, long seq, ByteBuffer payload) {
+        this.type   = message.type;
+        this.sender = message.sender;
+        this.r1 = message.r1;
+        this.r2 = message.r2;
+        this.value = message.value;
+        this.heartbeats = message.heartbeats;
+        this.seq = seq;
+        this.payload = payload;
+    }
+
+    /** a copy of this message with the given sequence number */
+    public Message withSequence(long seq) {
+        return new Message(this, seq, payload);
+    }
+
+    /** a copy of this message carrying the given [payload] (the bytes of its value, or their digest) */
+    public Message withPayload(@NotNull ByteBuffer payload) {
+        return new Message(this, seq, payload.asReadOnlyBuffer());
+    }
+
+    /** whether the type of this message carries a value (and so its payload) */
+    public boolean hasValue() {
+        return type == Type.begin || type == Type.last || type == Type.success;
     }
 
     public Type getType() {
@@ -80,15 +126,19 @@ public class Message {
 
     public int getSender() { return sender; }
 
-    public void setSender(int sender) { this.sender = sender; }
+    public int[] getHeartbeats() { return heartbeats; }
 
-    public Message copy() {
-        Message m = new Message(type);
-        m.r1 = (r1 == null) ? Round.empty() : r1.copy();
-        m.r2 = (r2 == null) ? Round.empty() : r2.copy();
-        m.value  = value;
-        m.sender = sender;
-        return m;
+    public long getSequence() { return seq; }
+
+    /** a read-only view of the payload (or digest) carried, or null */
+    public ByteBuffer getPayload() {
+        return (payload == null) ? null : payload.duplicate();
+    }
+
+    /** the size of this message on the wire: the header, the heartbeat counters and the payload */
+    public int bytes() {
+        final int counters = (heartbeats == null) ? 0 : heartbeats.length * Integer.BYTES;
+        return HEADER_SIZE + counters + ((payload == null) ? 0 : payload.capacity());
     }
 
     /**
@@ -112,6 +162,44 @@ public class Message {
         begin,
         queryAlive,
         alive,
+        heartbeat,
+        preVote,
+        preVoteGranted;
+
+        /** messages used to know the alive nodes, and so to elect a leader */
+        public boolean isElection() {
+            return this == queryAlive || this == alive || this == heartbeat;
+        }
+
+        /** messages sent in response to another one (a duplicated request causes a duplicated response) */
+        public boolean isReply() {
+            return this == last || this == accept || this == oldRound || this == alive || this == preVoteGranted;
+        }
+
+        /** requests and replies of the two phases of the protocol */
+        public boolean isPhase() {
+            return this == collect || this == last || this == begin || this == accept;
+        }
+
+        /**
+         * Priority of the message when a full mailbox must shed something: the decision first, then the
+         * two phases of the protocol, the pre-vote, and finally the election messages (which are periodic).
+         */
+        public int priority() {
+            switch (this) {
+                case success:
+                    return 3;
+                case preVote:
+                case preVoteGranted:
+                    return 1;
+                case queryAlive:
+                case alive:
+                case heartbeat:
+                    return 0;
+                default:
+                    return 2;
+            }
+        }
     }
 
     @Override
@@ -123,6 +211,7 @@ public class Message {
 
         if (value != message.value) return false;
         if (type != message.type) return false;
+        if (!Arrays.equals(heartbeats, message.heartbeats)) return false;
         if (r1 != null ? !r1.equals(message.r1) : message.r1 != null) return false;
         return r2 != null ? r2.equals(message.r2) : message.r2 == null;
     }
@@ -156,8 +245,15 @@ public class Message {
                 return String.format("Message [begin, round: %s, proposed_value: %d, sender: %d]",
                         r1, value, sender);
             case success:
-                return String.format("Message [success, value: %d, sender: %d]",
-                        value, sender);
+                return String.format("Message [success, round: %s, value: %d, sender: %d]",
+                        r1, value, sender);
+            case preVote:
+            case preVoteGranted:
+                return String.format("Message [%s, round: %s, sender: %d]",
+                        type, r1, sender);
+            case heartbeat:
+                return String.format("Message [heartbeat, counters: %s, sender: %d]",
+                        Arrays.toString(heartbeats), sender);
             case oldRound:
                 return String.format("Message [oldRound, round: %s, commit: %s, sender: %d]",
                         r1, r2, sender);
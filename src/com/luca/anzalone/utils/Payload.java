@@ -0,0 +1,90 @@
+package com.luca.anzalone.utils;
+
+import com.sun.istack.internal.NotNull;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * The opaque command behind a proposed value: [size] bytes, stored off-heap (in a direct buffer), together with
+ * their fixed-size SHA-256 digest. The value is still the identity of the proposal (the protocol, the safety checks
+ * and the summaries compare values), the payload only gives the messages carrying it their real size.
+ *
+ * A payload is immutable: the messages share read-only views of the same memory ([data], [digest]), as a broadcast
+ * shares the same message.
+ *
+ * @author Luca Anzalone
+ */
+public class Payload {
+    public static final int DIGEST_SIZE = 32;  // bytes of a SHA-256 digest
+
+    private final int value;
+    private final ByteBuffer data;    // read-only, direct
+    private final ByteBuffer digest;  // read-only, direct
+
+    /** the payload of [value], of the given [size]: its bytes depend only on the value (so every node agrees) */
+    public Payload(int value, int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("a payload needs at least one byte: " + size);
+
+        final ByteBuffer bytes = ByteBuffer.allocateDirect(size);
+        final Random generator = new Random(value);
+
+        while (bytes.remaining() >= Long.BYTES)
+            bytes.putLong(generator.nextLong());
+
+        while (bytes.hasRemaining())
+            bytes.put((byte) generator.nextInt());
+
+        bytes.flip();
+
+        final MessageDigest sha256 = sha256();
+        sha256.update(bytes.duplicate());  // read in place, off-heap
+
+        final ByteBuffer hash = ByteBuffer.allocateDirect(DIGEST_SIZE);
+        hash.put(sha256.digest());
+        hash.flip();
+
+        this.value  = value;
+        this.data   = bytes.asReadOnlyBuffer();
+        this.digest = hash.asReadOnlyBuffer();
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public int size() {
+        return data.capacity();
+    }
+
+    /** a read-only view of the payload (no copy) */
+    public ByteBuffer data() {
+        return data.duplicate();
+    }
+
+    /** a read-only view of the digest of the payload (no copy) */
+    public ByteBuffer digest() {
+        return digest.duplicate();
+    }
+
+    /** whether the given bytes are this payload (if its size) or its digest */
+    public boolean matches(@NotNull ByteBuffer bytes) {
+        return bytes.equals(data) || bytes.equals(digest);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);  // every JVM has SHA-256
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Payload [value: %d, %d bytes]", value, size());
+    }
+}
@@ -2,13 +2,14 @@ package com.luca.anzalone.utils;
 
 /**
  * Round object, defined as a couple (count, identifier).
- * This kind of definition allows a total ordering relation between rounds
+ * This kind of definition allows a total ordering relation between rounds.
+ * A round is immutable, so it can be shared by nodes and messages without copies.
  *
  * @author Luca Anzalone
  */
 public class Round implements Comparable<Round> {
-    private int count;
-    private int id;
+    private final int count;
+    private final int id;
     private static final Round DEFAULT = new Round(Integer.MIN_VALUE, Integer.MIN_VALUE);
 
     public Round(int count, int id) {
@@ -16,10 +17,9 @@ public class Round implements Comparable<Round> {
         this.id = id;
     }
 
-    /** increase by 1 the [count] field */
+    /** returns the round that follows this one, i.e. (count + 1, id) */
     public Round increase() {
-        this.count++;
-        return this;
+        return new Round(count + 1, id);
     }
 
     public int getCount() {
@@ -64,10 +64,6 @@ public class Round implements Comparable<Round> {
         return b == null || count > b.count || count == b.count && id >= b.id;
     }
 
-    public Round copy() {
-        return new Round(count, id);
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;